@@ -0,0 +1,43 @@
+package yutongz1997.auto2048.core;
+
+
+/**
+ * The default depth policy, which only ever chooses two depths: the maximum
+ * one, or one level shallower for a board which is both open (more than 4
+ * empty tiles) and simple (fewer than 9 distinct numbers and no number of 2048
+ * or more). Open boards are the most expensive to search and the safest ones,
+ * while crowded or complex boards are where the game is lost. The depth is
+ * never below the minimum one.
+ * @author Yutong Zhang
+ */
+public class AdaptiveDepthPolicy implements DepthPolicy {
+    // Boards with no more empty tiles than this are crowded.
+    private static final int CROWDED_EMPTY_TILES = 4;
+    // Boards with at least this number of distinct numbers are complex.
+    private static final int COMPLEX_DISTINCT_TILES = 9;
+    // Boards with a number at least this large are complex.
+    private static final int COMPLEX_MAX_TILE = 2048;
+
+    // The minimum and the maximum depth the policy chooses.
+    private int minimumDepth;
+    private int maximumDepth;
+
+
+    /**
+     * Constructs an adaptive depth policy object.
+     * @param minimumDepth the minimum depth the policy chooses
+     * @param maximumDepth the maximum depth the policy chooses
+     */
+    public AdaptiveDepthPolicy(int minimumDepth, int maximumDepth) {
+        this.minimumDepth = minimumDepth;
+        this.maximumDepth = Math.max(minimumDepth, maximumDepth);
+    }
+
+
+    @Override
+    public int getDepth(int emptyTileNumber, int distinctTileNumber, int maxTile) {
+        boolean crowded = emptyTileNumber <= CROWDED_EMPTY_TILES;
+        boolean complex = distinctTileNumber >= COMPLEX_DISTINCT_TILES || maxTile >= COMPLEX_MAX_TILE;
+        return (crowded || complex) ? maximumDepth : Math.max(minimumDepth, maximumDepth - 1);
+    }
+}
@@ -0,0 +1,357 @@
+package yutongz1997.auto2048.core;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.Directions;
+import yutongz1997.auto2048.lib.CoreConstants.EvaluationModes;
+import yutongz1997.auto2048.lib.CoreConstants.ReplacementPolicies;
+import yutongz1997.auto2048.lib.CoreConstants.SearchModes;
+import yutongz1997.auto2048.lib.SettingsConstants;
+import yutongz1997.auto2048.metrics.SearchMetrics;
+
+
+/**
+ * The class of the auto player, which searches the next step of a game board
+ * with a given search configuration: the search mode, the policy of the search
+ * level, the evaluation function, the number of threads of the parallel search
+ * and the time budget of the iterative deepening search. It is shared by the
+ * game's window and the headless tools, so both play the same way.
+ * <p>The breadth first search only chooses the direction of the next step,
+ * and the game board moved in that direction spawns its own new number. The
+ * subtree below the chosen move is kept, and extended for the next decision if
+ * the search has sampled the very number the game has spawned (see
+ * {@link SearchTree#advance(Board, int)}). Its number of nodes
+ * is capped by a node limit, which bounds the memory taken by the auto player
+ * (see {@link SearchTree#setNodeLimit(int)}).</p>
+ * <p>The expectimax search averages over the real spawns of every move instead
+ * of following the spawned boards, and looks ahead the level of moves chosen
+ * by the depth policy. Without an evaluation function, it evaluates the packed
+ * boards by {@link HeuristicEvaluator}, the counterpart of
+ * {@link Board#evaluate(int)}. Its transposition table is kept from one
+ * decision to the next, since the value of a board searched to a given depth
+ * does not change, but it is cleared by {@link #newGame()}, so that a game is
+ * played the same way whatever games the auto player has played before. The
+ * unlikely spawns are cut off below the threshold of
+ * {@link CoreConstants#PROBABILITY_CUTOFF_DEFAULT_THRESHOLD} unless another one
+ * is set.</p>
+ * <p>The pool of the parallel search is owned by the auto player and released
+ * by {@link #close()}. If search metrics are given, every decision is recorded
+ * to them, with the lookups of the transposition table it has made and the
+ * nodes it has pruned.</p>
+ * <p>A decision can be cancelled from another thread through a token (see
+ * {@link #nextStep(Board, int, CancellationToken)}), which every search mode
+ * checks while it runs, so that the auto player stops promptly when the game
+ * is paused or replaced.</p>
+ * @author Yutong Zhang
+ */
+public class AutoPlayer implements AutoCloseable {
+    // The search mode.
+    private SearchModes searchMode;
+    // The policy choosing the level of the search for every move.
+    private DepthPolicy depthPolicy;
+    // The evaluation function of the boards (null for Board.evaluate(int)).
+    private Evaluator evaluator;
+    // The time budget (in milliseconds) of each move of the iterative deepening
+    // search.
+    private int moveBudget;
+    // The pool of the parallel search (null in the other modes).
+    private ForkJoinPool searchPool;
+    // The metrics recording every decision (null if not recorded).
+    private SearchMetrics metrics;
+    // The maximum number of nodes of the search tree of the breadth first
+    // search, and the number of decisions cut short by it.
+    private int nodeLimit = SettingsConstants.SEARCH_NODE_LIMIT_DEFAULT;
+    private long nodeLimitHitCount;
+    // The search tree of the last decision of the breadth first search, which
+    // is reused by the next decision if its move has been played, and whose
+    // arena is reused by every decision otherwise.
+    private SearchTree searchTree;
+    // The expectimax search of every decision in the expectimax mode, and its
+    // transposition table (both null in the other modes).
+    private Expectimax expectimax;
+    private TranspositionTable transpositionTable;
+    // The number of nodes pruned by the probability cutoff of the expectimax
+    // search since the start of the game.
+    private long prunedNodeCount;
+
+
+    /**
+     * Constructs an auto player object.
+     * @param searchMode the search mode
+     * @param depthPolicy the policy choosing the level of the search for every move
+     * @param evaluator the evaluation function of the boards, or null to use
+     *                  {@link Board#evaluate(int)}
+     * @param searchThreads the number of threads of the parallel search (only
+     *                      used in the parallel mode)
+     * @param moveBudget the time budget (in milliseconds) of each move (only used
+     *                   in the iterative deepening mode)
+     */
+    public AutoPlayer(SearchModes searchMode, DepthPolicy depthPolicy, Evaluator evaluator,
+                      int searchThreads, int moveBudget) {
+        this.searchMode = searchMode;
+        this.depthPolicy = depthPolicy;
+        this.evaluator = evaluator;
+        this.moveBudget = moveBudget;
+        if (searchMode == SearchModes.PARALLEL)
+            searchPool = new ForkJoinPool(searchThreads);
+        else if (searchMode == SearchModes.EXPECTIMAX) {
+            transpositionTable = new TranspositionTable();
+            expectimax = new Expectimax((evaluator == null) ? new HeuristicEvaluator() : evaluator,
+                    transpositionTable);
+        }
+    }
+
+
+    /**
+     * Prepares the auto player for a new game: the transposition table of the
+     * expectimax search is cleared, with its counters, so that no value found
+     * in an earlier game is reused, and the count of pruned nodes is reset. The search tree of the breadth first search
+     * needs no reset, since a new board never matches the move it has chosen.
+     */
+    public void newGame() {
+        if (transpositionTable != null)
+            transpositionTable.clear();
+        prunedNodeCount = 0;
+    }
+
+
+    /**
+     * Sets the time budget of each move of the iterative deepening search,
+     * which applies from the next decision on.
+     * @param moveBudget the time budget in milliseconds
+     */
+    public void setMoveBudget(int moveBudget) {
+        this.moveBudget = moveBudget;
+    }
+
+
+    /**
+     * Sets the metrics recording every decision of the auto player.
+     * @param metrics the search metrics, or null not to record the decisions
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Sets the maximum number of nodes of the search tree of the breadth first
+     * search. Once a level cannot be completed within the limit, the decision
+     * falls back to the deepest complete level above it.
+     * @param nodeLimit the maximum number of nodes
+     * @throws IllegalArgumentException if the limit cannot even hold the root
+     *         and its children
+     */
+    public void setNodeLimit(int nodeLimit) {
+        if (nodeLimit <= CoreConstants.DIRECTION_NUMBER)
+            throw new IllegalArgumentException("Invalid node limit: " + nodeLimit);
+        this.nodeLimit = nodeLimit;
+        if (searchTree != null)
+            searchTree.setNodeLimit(nodeLimit);
+    }
+
+
+    /**
+     * Returns the number of decisions so far whose search trees have been cut
+     * short by the node limit.
+     * @return the number of decisions reaching the node limit
+     */
+    public long getNodeLimitHitCount() {
+        return nodeLimitHitCount;
+    }
+
+
+    /**
+     * Sets the replacement policy of the transposition table of the expectimax
+     * search. It does nothing in the other modes.
+     * @param replacementPolicy the replacement policy used when two boards share
+     *                          the same slot
+     */
+    public void setReplacementPolicy(ReplacementPolicies replacementPolicy) {
+        if (transpositionTable != null)
+            transpositionTable.setReplacementPolicy(replacementPolicy);
+    }
+
+
+    /**
+     * Sets the threshold of the probability cutoff of the expectimax search
+     * (see {@link Expectimax#setProbabilityThreshold(double)}). It does nothing
+     * in the other modes.
+     * @param probabilityThreshold the threshold of the cumulative possibility,
+     *                             or 0 to disable the cutoff
+     * @throws IllegalArgumentException if the threshold is not between 0 and 1
+     */
+    public void setProbabilityThreshold(double probabilityThreshold) {
+        if (expectimax != null)
+            expectimax.setProbabilityThreshold(probabilityThreshold);
+    }
+
+
+    /**
+     * Returns the number of lookups of the transposition table of the
+     * expectimax search since the start of the game which have found a value.
+     * @return the number of hits (0 in the other modes)
+     */
+    public long getTranspositionHitCount() {
+        return (transpositionTable == null) ? 0 : transpositionTable.getHitCount();
+    }
+
+
+    /**
+     * Returns the number of lookups of the transposition table of the
+     * expectimax search since the start of the game which have not found a
+     * value.
+     * @return the number of misses (0 in the other modes)
+     */
+    public long getTranspositionMissCount() {
+        return (transpositionTable == null) ? 0 : transpositionTable.getMissCount();
+    }
+
+
+    /**
+     * Returns the number of nodes of the expectimax search since the start of
+     * the game which have been evaluated early by the probability cutoff.
+     * @return the number of pruned nodes (0 in the other modes)
+     */
+    public long getPrunedNodeCount() {
+        return prunedNodeCount;
+    }
+
+
+    /**
+     * Creates the evaluation function of an evaluation mode.
+     * @param evaluationMode the evaluation mode
+     * @param weightsFile the name of the weights file (only used by the n-tuple
+     *                    evaluation mode)
+     * @return the evaluation function, or null for {@link Board#evaluate(int)}
+     * @throws IOException if the weights file cannot be loaded
+     */
+    public static Evaluator createEvaluator(EvaluationModes evaluationMode, String weightsFile)
+            throws IOException {
+        switch (evaluationMode) {
+            case ROW_TABLES:
+                return new RowTableEvaluator();
+            case N_TUPLE:
+                return NTupleEvaluator.load(weightsFile);
+            case BOARD:
+            default:
+                return null;
+        }
+    }
+
+
+    /**
+     * Searches the next step's game board of the given one.
+     * @param gameBoard the current game board
+     * @param steps the total steps of the game up to now (which is used to compute
+     *              the evaluation value of a board)
+     * @return the next step's game board, or null if the board cannot move
+     */
+    public Board nextStep(Board gameBoard, int steps) {
+        return nextStep(gameBoard, steps, null);
+    }
+
+
+    /**
+     * Searches the next step's game board of the given one, unless the search
+     * is cancelled through the given token first. A cancelled decision is not
+     * recorded to the metrics.
+     * @param gameBoard the current game board
+     * @param steps the total steps of the game up to now (which is used to compute
+     *              the evaluation value of a board)
+     * @param cancellationToken the token cancelling the search, or null if it
+     *                          cannot be cancelled
+     * @return the next step's game board, or null if the board cannot move
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through the token
+     */
+    public Board nextStep(Board gameBoard, int steps, CancellationToken cancellationToken) {
+        long startTime = System.nanoTime();
+        int searchTreeLevel = depthPolicy.getDepth(gameBoard);
+        Board nextStep;
+        long nodeCount;
+        int depth;
+        switch (searchMode) {
+            case PARALLEL:
+                ParallelSearch parallelSearch = new ParallelSearch(gameBoard, searchTreeLevel, searchPool);
+                parallelSearch.setEvaluator(evaluator);
+                parallelSearch.setCancellationToken(cancellationToken);
+                nextStep = parallelSearch.nextStep(steps);
+                nodeCount = parallelSearch.getNodeCount();
+                depth = parallelSearch.getDepth();
+                break;
+            case ITERATIVE_DEEPENING:
+                IterativeDeepeningSearch iterativeDeepeningSearch = new IterativeDeepeningSearch(gameBoard,
+                        SettingsConstants.SEARCH_TREE_LEVEL_MAX, moveBudget);
+                iterativeDeepeningSearch.setEvaluator(evaluator);
+                iterativeDeepeningSearch.setCancellationToken(cancellationToken);
+                nextStep = iterativeDeepeningSearch.nextStep(steps);
+                nodeCount = iterativeDeepeningSearch.getNodeCount();
+                depth = iterativeDeepeningSearch.getFinishedLevel();
+                break;
+            case DEPTH_FIRST:
+                DepthFirstSearch depthFirstSearch = new DepthFirstSearch(gameBoard, searchTreeLevel);
+                depthFirstSearch.setEvaluator(evaluator);
+                depthFirstSearch.setCancellationToken(cancellationToken);
+                nextStep = depthFirstSearch.nextStep(steps);
+                nodeCount = depthFirstSearch.getNodeCount();
+                depth = depthFirstSearch.getBestLevel();
+                break;
+            case EXPECTIMAX:
+                long startHits = transpositionTable.getHitCount();
+                long startMisses = transpositionTable.getMissCount();
+                expectimax.setCancellationToken(cancellationToken);
+                // The best direction is the one of the largest expected value
+                // (the first one in the order of the directions on a tie).
+                Directions bestDirection = expectimax.search(gameBoard, searchTreeLevel).getBestDirection();
+                nextStep = (bestDirection == null) ? null : gameBoard.move(bestDirection);
+                nodeCount = expectimax.getNodeCount();
+                depth = searchTreeLevel;
+                prunedNodeCount += expectimax.getPrunedNodeCount();
+                if (metrics != null) {
+                    metrics.recordTranspositionLookups(transpositionTable.getHitCount() - startHits,
+                            transpositionTable.getMissCount() - startMisses);
+                    metrics.recordPrunedNodes(expectimax.getPrunedNodeCount());
+                }
+                break;
+            case BREADTH_FIRST:
+            default:
+                if (searchTree == null) {
+                    searchTree = new SearchTree(Math.min(CoreConstants.SEARCH_TREE_DEFAULT_CAPACITY, nodeLimit));
+                    searchTree.setNodeLimit(nodeLimit);
+                }
+                searchTree.setCancellationToken(cancellationToken);
+                if (!searchTree.advance(gameBoard, searchTreeLevel))
+                    searchTree.reset(gameBoard, searchTreeLevel);
+                searchTree.setEvaluator(evaluator);
+                // The game spawns its own new number, which the subtree of the
+                // chosen direction is only reused for if the search has
+                // sampled the same one.
+                Directions nextDirection = searchTree.nextDirection(steps);
+                nextStep = (nextDirection == null) ? null : gameBoard.move(nextDirection);
+                nodeCount = searchTree.getNodeCount();
+                depth = searchTree.getDepth();
+                if (searchTree.isNodeLimitReached()) {
+                    nodeLimitHitCount++;
+                    if (metrics != null)
+                        metrics.recordNodeLimitHit();
+                }
+                break;
+        }
+        if (metrics != null)
+            metrics.recordDecision(System.nanoTime() - startTime, nodeCount, depth);
+        return nextStep;
+    }
+
+
+    /**
+     * Releases the pool of the parallel search, if any.
+     */
+    @Override
+    public void close() {
+        if (searchPool != null)
+            searchPool.shutdown();
+    }
+}
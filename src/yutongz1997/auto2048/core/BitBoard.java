@@ -0,0 +1,437 @@
+package yutongz1997.auto2048.core;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.Directions;
+
+
+/**
+ * The class of the bitboard game engine. Instead of a two-dimension array of
+ * numbers, the whole board is packed into a single long: every tile takes 4
+ * bits and stores the base-2 logarithm of its number (0 for an empty tile), so
+ * that the tile at (row, column) lives in bits [16 * row + 4 * column,
+ * 16 * row + 4 * column + 3]. All moves are done by looking up the precomputed
+ * tables of {@link MoveTables}, which makes the engine suitable for deep searches.
+ * <p>Since a tile has only 4 bits, the largest number that can be represented
+ * is 32768, and two tiles of 32768 are never combined.</p>
+ * @author Yutong Zhang
+ */
+public final class BitBoard {
+    private long board;
+    private int scores;
+
+
+    /**
+     * Constructs a bitboard object from a packed board and the scores.
+     * @param board the packed board
+     * @param scores the scores of the player
+     */
+    public BitBoard(long board, int scores) {
+        this.board = board;
+        this.scores = scores;
+    }
+
+
+    /**
+     * Converts a game board to a bitboard.
+     * @param gameBoard the game board
+     * @return the equivalent bitboard
+     * @throws IllegalArgumentException if a tile of the game board is not a power
+     *         of two or is larger than 32768
+     */
+    public static BitBoard fromBoard(Board gameBoard) {
+        return new BitBoard(pack(gameBoard.getBoard()), gameBoard.getScores());
+    }
+
+
+    /**
+     * Converts the current bitboard to a game board.
+     * @return the equivalent game board
+     */
+    public Board toBoard() {
+        return new Board(unpack(board), scores);
+    }
+
+
+    /**
+     * Returns the current packed board.
+     * @return the packed board
+     */
+    public long getBoard() {
+        return board;
+    }
+
+
+    /**
+     * Returns the scores the player gets based on all tiles' information.
+     * @return the scores
+     */
+    public int getScores() {
+        return scores;
+    }
+
+
+    /**
+     * Determines the maximum number contained in all tiles.
+     * @return the maximum number
+     */
+    public int getMaxTile() {
+        return getMaxTile(board);
+    }
+
+
+    /**
+     * Counts the number of empty tiles currently presented on the board.
+     * @return the number of empty tiles
+     */
+    public int getEmptyTileNumber() {
+        return getEmptyTileNumber(board);
+    }
+
+
+    /**
+     * Determines whether the game is over, i.e. none of the four directions
+     * changes the board.
+     * @return true if the game is over; false otherwise
+     */
+    public boolean isGameOver() {
+        return isGameOver(board);
+    }
+
+
+    /**
+     * Obtains a new bitboard by moving the current one to the given direction,
+     * and adds a new number (2 or 4) in a random empty tile.
+     * @param direction the given direction
+     * @return the new bitboard if the move is valid; null otherwise
+     */
+    public BitBoard move(Directions direction) {
+        long movedBoard = move(board, direction);
+        if (movedBoard == board)
+            return null;
+        return new BitBoard(addNumber(movedBoard),
+                scores + getMoveScore(board, direction));
+    }
+
+
+    /**
+     * Packs a two-dimension array of numbers into a long.
+     * @param tiles the two-dimension array of numbers
+     * @return the packed board
+     * @throws IllegalArgumentException if a number is not a power of two or is
+     *         larger than 32768
+     */
+    public static long pack(int[][] tiles) {
+        long board = 0;
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
+                board |= (long) MoveTables.toExponent(tiles[row][column]) << getShift(row, column);
+        return board;
+    }
+
+
+    /**
+     * Unpacks a packed board into a two-dimension array of numbers.
+     * @param board the packed board
+     * @return the two-dimension array of numbers
+     */
+    public static int[][] unpack(long board) {
+        int[][] tiles = new int[CoreConstants.BOARD_DIMENSION][CoreConstants.BOARD_DIMENSION];
+        unpack(board, tiles);
+        return tiles;
+    }
+
+
+    /**
+     * Unpacks a packed board into an existing two-dimension array of numbers,
+     * overwriting all of them.
+     * @param board the packed board
+     * @param tiles the two-dimension array to hold the numbers
+     */
+    public static void unpack(long board, int[][] tiles) {
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
+                tiles[row][column] = getTile(board, row, column);
+    }
+
+
+    /**
+     * Returns the number contained in the tile at the given location.
+     * @param board the packed board
+     * @param row the row index of the tile
+     * @param column the column index of the tile
+     * @return the number of the tile (0 if it is empty)
+     */
+    public static int getTile(long board, int row, int column) {
+        return MoveTables.toNumber(getExponent(board, row, column));
+    }
+
+
+    /**
+     * Returns the base-2 logarithm of the number contained in the tile at the
+     * given location.
+     * @param board the packed board
+     * @param row the row index of the tile
+     * @param column the column index of the tile
+     * @return the exponent of the tile (0 if it is empty)
+     */
+    public static int getExponent(long board, int row, int column) {
+        return (int) (board >>> getShift(row, column)) & MoveTables.TILE_MASK;
+    }
+
+
+    /**
+     * Determines the maximum number contained in all tiles of a packed board.
+     * @param board the packed board
+     * @return the maximum number
+     */
+    public static int getMaxTile(long board) {
+        int maxExponent = 0;
+        for (; board != 0; board >>>= MoveTables.TILE_BITS)
+            maxExponent = Math.max(maxExponent, (int) board & MoveTables.TILE_MASK);
+        return MoveTables.toNumber(maxExponent);
+    }
+
+
+    /**
+     * Counts the number of empty tiles of a packed board.
+     * @param board the packed board
+     * @return the number of empty tiles
+     */
+    public static int getEmptyTileNumber(long board) {
+        // Fold every tile into its lowest bit, so that the bit is set if and
+        // only if the tile is not empty.
+        board |= (board >>> 2);
+        board |= (board >>> 1);
+        return Long.bitCount(~board & 0x1111111111111111L);
+    }
+
+
+    /**
+     * Counts the number of distinct numbers contained in all tiles of a packed
+     * board.
+     * @param board the packed board
+     * @return the number of distinct numbers
+     */
+    public static int getDistinctTileNumber(long board) {
+        int exponentSet = 0;
+        for (; board != 0; board >>>= MoveTables.TILE_BITS)
+            exponentSet |= (1 << ((int) board & MoveTables.TILE_MASK));
+        // The empty tiles are not counted.
+        return Integer.bitCount(exponentSet & ~1);
+    }
+
+
+    /**
+     * Determines whether the game is over for a packed board.
+     * @param board the packed board
+     * @return true if the game is over; false otherwise
+     */
+    public static boolean isGameOver(long board) {
+        for (Directions direction : Directions.values())
+            if (move(board, direction) != board)
+                return false;
+        return true;
+    }
+
+
+    /**
+     * Moves a packed board to the given direction without adding a new number.
+     * @param board the packed board
+     * @param direction the given direction
+     * @return the moved board, which equals the given one if the move is invalid
+     */
+    public static long move(long board, Directions direction) {
+        long movedBoard = 0;
+        switch (direction) {
+            case LEFT:
+                for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+                    movedBoard |= (long) MoveTables.moveRowLeft(getLine(board, row)) << (MoveTables.LINE_BITS * row);
+                return movedBoard;
+            case RIGHT:
+                for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+                    movedBoard |= (long) MoveTables.moveRowRight(getLine(board, row)) << (MoveTables.LINE_BITS * row);
+                return movedBoard;
+            case UP:
+                board = transpose(board);
+                for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
+                    movedBoard |= MoveTables.moveColumnUp(getLine(board, column)) << (MoveTables.TILE_BITS * column);
+                return movedBoard;
+            case DOWN:
+                board = transpose(board);
+                for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
+                    movedBoard |= MoveTables.moveColumnDown(getLine(board, column)) << (MoveTables.TILE_BITS * column);
+                return movedBoard;
+            default:
+                return board;
+        }
+    }
+
+
+    /**
+     * Calculates the scores gained by moving a packed board to the given
+     * direction.
+     * @param board the packed board
+     * @param direction the given direction
+     * @return the scores gained
+     */
+    public static int getMoveScore(long board, Directions direction) {
+        // A column is moved up or down as a row of the transposed board.
+        if (direction == Directions.UP || direction == Directions.DOWN)
+            board = transpose(board);
+        boolean towardsFirst = (direction == Directions.LEFT || direction == Directions.UP);
+        int scores = 0;
+        for (int line = 0; line < CoreConstants.BOARD_DIMENSION; line++)
+            scores += towardsFirst ? MoveTables.getLeftScore(getLine(board, line))
+                    : MoveTables.getRightScore(getLine(board, line));
+        return scores;
+    }
+
+
+    /**
+     * Adds a number (2 or 4, which is randomly generated) in a random empty tile
+     * of a packed board, both drawn from the spawn source of the current thread
+     * (see {@link Board#getSpawnSource()}).
+     * @param board the packed board
+     * @return the new board, or the given one if there is no empty tile
+     */
+    public static long addNumber(long board) {
+        int emptyTileNumber = getEmptyTileNumber(board);
+        if (emptyTileNumber == 0)
+            return board;
+        SpawnSource source = Board.getSpawnSource();
+        int index = source.nextEmptyTileIndex(emptyTileNumber);
+        return setEmptyTile(board, index, source.nextIsNumber4() ? 2 : 1);
+    }
+
+
+    /**
+     * Places a tile in the index-th empty tile (counting from the top-left one
+     * in row-major order) of a packed board.
+     * @param board the packed board
+     * @param index the index of the empty tile
+     * @param exponent the exponent of the new tile
+     * @return the new board
+     */
+    public static long setEmptyTile(long board, int index, int exponent) {
+        for (int shift = 0; shift < Long.SIZE; shift += MoveTables.TILE_BITS) {
+            if (((board >>> shift) & MoveTables.TILE_MASK) == 0) {
+                if (index == 0)
+                    return board | ((long) exponent << shift);
+                index--;
+            }
+        }
+        return board;
+    }
+
+
+    /**
+     * Transposes a packed board, i.e. swaps the tile at (row, column) with the
+     * tile at (column, row).
+     * @param board the packed board
+     * @return the transposed board
+     */
+    public static long transpose(long board) {
+        long a1 = board & 0xF0F00F0FF0F00F0FL;
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+
+    /**
+     * Mirrors a packed board horizontally, i.e. reverses the tiles of every row.
+     * @param board the packed board
+     * @return the mirrored board
+     */
+    public static long flipHorizontal(long board) {
+        return ((board & 0x000F000F000F000FL) << 12) | ((board & 0x00F000F000F000F0L) << 4)
+                | ((board & 0x0F000F000F000F00L) >>> 4) | ((board & 0xF000F000F000F000L) >>> 12);
+    }
+
+
+    /**
+     * Mirrors a packed board vertically, i.e. reverses the order of the rows.
+     * @param board the packed board
+     * @return the mirrored board
+     */
+    public static long flipVertical(long board) {
+        return (board << 48) | ((board & 0xFFFF0000L) << 16)
+                | ((board >>> 16) & 0xFFFF0000L) | (board >>> 48);
+    }
+
+
+    /**
+     * Returns the canonical form of a packed board under the 8 symmetries of
+     * the square (the rotations and the reflections), which is the smallest of
+     * the 8 boards. Two boards have the same canonical form if and only if one
+     * can be rotated or reflected into the other.
+     * @param board the packed board
+     * @return the canonical board
+     */
+    public static long getCanonical(long board) {
+        long flippedHorizontally = flipHorizontal(board);
+        long flippedVertically = flipVertical(board);
+        long rotated = flipVertical(flippedHorizontally);
+        long canonical = Math.min(Math.min(board, flippedHorizontally),
+                Math.min(flippedVertically, rotated));
+        canonical = Math.min(canonical, Math.min(transpose(board), transpose(flippedHorizontally)));
+        return Math.min(canonical, Math.min(transpose(flippedVertically), transpose(rotated)));
+    }
+
+
+    /**
+     * Returns the encoded line of the given row of a packed board.
+     * @param board the packed board
+     * @param row the row index
+     * @return the encoded row
+     */
+    private static int getLine(long board, int row) {
+        return (int) (board >>> (MoveTables.LINE_BITS * row)) & MoveTables.LINE_MASK;
+    }
+
+
+    /**
+     * Returns the position of the lowest bit of the tile at the given location.
+     * @param row the row index of the tile
+     * @param column the column index of the tile
+     * @return the shift of the tile
+     */
+    private static int getShift(int row, int column) {
+        return MoveTables.LINE_BITS * row + MoveTables.TILE_BITS * column;
+    }
+
+
+    /**
+     * Compares this bitboard with another object.
+     * @param o the other object
+     * @return true if both the tiles and the scores are identical; false otherwise
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BitBoard))
+            return false;
+        BitBoard other = (BitBoard) o;
+        return board == other.board && scores == other.scores;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(board) + scores;
+    }
+
+
+    /**
+     * Returns a formatted string of the board, which is identical to that of
+     * the equivalent game board.
+     * @return a string representation of the board information
+     */
+    @Override
+    public String toString() {
+        return toBoard().toString();
+    }
+}
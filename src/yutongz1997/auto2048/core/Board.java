@@ -1,23 +1,39 @@
 package yutongz1997.auto2048.core;
 
 import java.util.Arrays;
-import java.util.Random;
 
 import yutongz1997.auto2048.lib.CoreConstants;
 import yutongz1997.auto2048.lib.CoreConstants.Directions;
 import yutongz1997.auto2048.lib.CoreConstants.Weights;
-import yutongz1997.auto2048.lib.Utility;
 
 
 /**
  * The class of game engine, which provides fundamental but the most important
- * elements (the game board, the moves, the scores, etc.) of the game.
+ * elements (the game board, the moves, the scores, etc.) of the game. All moves
+ * are done by looking up the precomputed tables of {@link MoveTables}, so the
+ * largest number a tile can reach is 32768: two tiles of 32768 never combine,
+ * and the game is over once they are the only tiles left to combine.
+ * <p>The new numbers are spawned from the {@link SpawnSource} of the current
+ * thread, so boards on different threads never contend, and a game played on
+ * one thread can be replayed by giving that thread the same seeded source.</p>
+ * <p>Besides {@link #move(Directions)}, which returns a new board, a board can
+ * be moved in place by {@link #makeMove(Directions)} and restored exactly by
+ * {@link #unmakeMove()}. The previous states are kept in an undo stack owned by
+ * the board, so a search can walk a whole tree with one board without
+ * allocating anything per node.</p>
  * @author Yutong Zhang
  */
 public class Board implements Cloneable {
-    private static final Random randNumGenerator = new Random();
+    // The source of the new numbers of every thread.
+    private static final ThreadLocal<SpawnSource> spawnSource = ThreadLocal.withInitial(RandomSpawnSource::new);
     private int[][] board;
     private int scores;
+    // The undo stack of the moves made in place: the packed tiles and the
+    // scores before each move, and the number of moves on the stack. It is
+    // only allocated by the first move made in place.
+    private long[] undoTiles;
+    private int[] undoScores;
+    private int undoDepth;
 
 
     /**
@@ -32,26 +48,55 @@ public class Board implements Cloneable {
     }
 
 
+    /**
+     * Constructs a game board object with the given tiles and scores, without
+     * placing any new number.
+     * @param board the numbers of all tiles
+     * @param scores the scores of the player
+     */
+    Board(int[][] board, int scores) {
+        this.scores = scores;
+        this.board = board;
+    }
+
+
     /**
      * Deeply copies everything in the current game board, including all numbers
-     * and the scores of the player.
+     * and the scores of the player. No new number is placed and nothing random
+     * is drawn, so this is cheap enough for every move of every search. The
+     * undo stack is not copied.
      * @return a copied board of the current one
      */
+    @Override
     public Board clone() {
-        Board boardCopy = null;
-        try {
-            super.clone();
-            boardCopy = new Board();
-            boardCopy.scores = scores;
-            for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
-                System.arraycopy(board[row], 0, boardCopy.board[row], 0, board.length);
-        } catch (CloneNotSupportedException e) {
-            e.printStackTrace();
-        }
+        Board boardCopy = new Board(new int[CoreConstants.BOARD_DIMENSION][CoreConstants.BOARD_DIMENSION], 0);
+        copyTo(boardCopy);
         return boardCopy;
     }
 
 
+    /**
+     * Copies all numbers and the scores of the current game board into another
+     * board, which can be reused instead of allocating a new copy every time.
+     * @param destination the board to overwrite
+     */
+    public void copyTo(Board destination) {
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            System.arraycopy(board[row], 0, destination.board[row], 0, CoreConstants.BOARD_DIMENSION);
+        destination.scores = scores;
+    }
+
+
+    /**
+     * Takes an immutable snapshot of the current game board, for the readers
+     * which must not see later changes (e.g. another thread showing it).
+     * @return the snapshot of the board
+     */
+    public BoardSnapshot snapshot() {
+        return new BoardSnapshot(board, scores);
+    }
+
+
     /**
      * Returns the current game board as a two-dimension array.
      * @return the game board
@@ -66,10 +111,19 @@ public class Board implements Cloneable {
      * @param anotherBoard the given game board
      */
     public void replaceBoardWith(Board anotherBoard) {
-        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
-            System.arraycopy(anotherBoard.board[row], 0, board[row], 0,
-                    anotherBoard.board.length);
-        scores = anotherBoard.scores;
+        anotherBoard.copyTo(this);
+    }
+
+
+    /**
+     * Replaces the current game board with a packed board and the given
+     * scores, without allocating anything.
+     * @param tiles the packed board (see {@link BitBoard})
+     * @param scores the scores of the player
+     */
+    void replaceBoardWith(long tiles, int scores) {
+        BitBoard.unpack(tiles, board);
+        this.scores = scores;
     }
 
 
@@ -86,7 +140,7 @@ public class Board implements Cloneable {
      * Counts the number of empty tiles currently presented on the board.
      * @return the number of empty tiles
      */
-    private int getEmptyTileNumber() {
+    public int getEmptyTileNumber() {
         int count = 0;
         for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
             for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
@@ -96,6 +150,21 @@ public class Board implements Cloneable {
     }
 
 
+    /**
+     * Counts the number of distinct numbers contained in all tiles currently
+     * presented on the board.
+     * @return the number of distinct numbers
+     */
+    public int getDistinctTileNumber() {
+        long numberSet = 0;
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
+                if (board[row][column] != 0)
+                    numberSet |= (1L << Integer.numberOfTrailingZeros(board[row][column]));
+        return Long.bitCount(numberSet);
+    }
+
+
     /**
      * Determines the maximum number contained in all tiles currently presented
      * on the board.
@@ -112,19 +181,41 @@ public class Board implements Cloneable {
 
 
     /**
-     * Adds a number (2 or 4, which is randomly generated) in a random empty tile.
+     * Returns the source of the new numbers of the current thread.
+     * @return the spawn source of the current thread
+     */
+    public static SpawnSource getSpawnSource() {
+        return spawnSource.get();
+    }
+
+
+    /**
+     * Changes the source of the new numbers of the current thread, e.g. to a
+     * {@link RandomSpawnSource} with a given seed to replay a game.
+     * @param source the new spawn source of the current thread
+     */
+    public static void setSpawnSource(SpawnSource source) {
+        spawnSource.set(source);
+    }
+
+
+    /**
+     * Adds a number (2 or 4, which is randomly generated) in a random empty tile,
+     * both drawn from the spawn source of the current thread.
      */
     private void addNumber() {
-        if (getEmptyTileNumber() > 0) {
-            while (true) {
-                int row = randNumGenerator.nextInt(CoreConstants.BOARD_DIMENSION);
-                int column = randNumGenerator.nextInt(CoreConstants.BOARD_DIMENSION);
-                if (board[row][column] == 0) {
-                    board[row][column] = Math.random() > CoreConstants.NUMBER_4_POSSIBILITY ? 2 : 4;
-                    break;
+        int emptyTileNumber = getEmptyTileNumber();
+        if (emptyTileNumber == 0)
+            return;
+        SpawnSource source = spawnSource.get();
+        int index = source.nextEmptyTileIndex(emptyTileNumber);
+        int number = source.nextIsNumber4() ? 4 : 2;
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
+                if (board[row][column] == 0 && index-- == 0) {
+                    board[row][column] = number;
+                    return;
                 }
-            }
-        }
     }
 
 
@@ -138,20 +229,36 @@ public class Board implements Cloneable {
      *     <p>(c) The current tile and the one on its right contain the same number.</p>
      *     <p>(d) The current tile and the one above it contain the same number.</p>
      *     <p>(e) The current tile and the one below it contain the same number.</p>
+     * In (b) to (e), the number must be smaller than 32768, which never combines.
      * @return true if the game is over; false otherwise
      */
     public boolean isGameOver() {
         for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
             for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++)
-                if (board[row][column] == 0 || (row > 0 && board[row][column] == board[row - 1][column])
-                        || (row < CoreConstants.BOARD_DIMENSION - 1 && board[row][column] == board[row + 1][column])
-                        || (column > 0 && board[row][column] == board[row][column - 1])
-                        || (column < CoreConstants.BOARD_DIMENSION - 1 && board[row][column] == board[row][column + 1]))
+                if (board[row][column] == 0
+                        || (row > 0 && canCombine(board[row][column], board[row - 1][column]))
+                        || (row < CoreConstants.BOARD_DIMENSION - 1
+                                && canCombine(board[row][column], board[row + 1][column]))
+                        || (column > 0 && canCombine(board[row][column], board[row][column - 1]))
+                        || (column < CoreConstants.BOARD_DIMENSION - 1
+                                && canCombine(board[row][column], board[row][column + 1])))
                     return false;
         return true;
     }
 
 
+    /**
+     * Determines whether two neighbouring tiles can be combined.
+     * @param number the number of one tile
+     * @param neighbour the number of the other tile
+     * @return true if they contain the same number, smaller than the largest
+     *         one; false otherwise
+     */
+    private static boolean canCombine(int number, int neighbour) {
+        return number == neighbour && number < (1 << CoreConstants.TILE_MAX_EXPONENT);
+    }
+
+
     /**
      * Deeply copies the current board at first, then makes a left move on the
      * cloned board and adds a new number.
@@ -160,35 +267,10 @@ public class Board implements Cloneable {
     private Board moveLeft() {
         Board newBoard = clone();
         for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
-            // First pass: combine as many tiles as possible.
-            for (int column = 0; column < CoreConstants.BOARD_DIMENSION - 1; column++) {
-                int currentNum = newBoard.board[row][column];
-                int tempIndex = column + 1;
-                // If two tiles (with zero or more empty tiles between them) contain
-                // same numbers, they can combine.
-                while (currentNum != 0 && tempIndex <= CoreConstants.BOARD_DIMENSION - 1) {
-                    if (newBoard.board[row][tempIndex] != 0
-                            && newBoard.board[row][tempIndex] != currentNum)
-                        break;
-                    else if (newBoard.board[row][tempIndex] == currentNum) {
-                        newBoard.board[row][column] *= 2;
-                        newBoard.board[row][tempIndex] = 0;
-                        newBoard.scores += (currentNum * 2);
-                        break;
-                    } else
-                        tempIndex++;
-                }
-            }
-            // Second pass: shift all the tiles to as left as possible.
-            for (int column = 1; column < CoreConstants.BOARD_DIMENSION; column++) {
-                if (newBoard.board[row][column] != 0) {
-                    int tempIndex = column;
-                    while (tempIndex > 0 && newBoard.board[row][tempIndex - 1] == 0) {
-                        Utility.swap(newBoard.board[row], tempIndex - 1, tempIndex);
-                        tempIndex--;
-                    }
-                }
-            }
+            // Look up the moved row and the scores gained in the move tables.
+            int line = MoveTables.packLine(newBoard.board[row]);
+            newBoard.scores += MoveTables.getLeftScore(line);
+            MoveTables.unpackLine(MoveTables.moveRowLeft(line), newBoard.board[row]);
         }
         // Having moved validly, place a new number (2 or 4) randomly on the board.
         if (isValidMove(newBoard))
@@ -206,36 +288,10 @@ public class Board implements Cloneable {
     private Board moveRight() {
         Board newBoard = clone();
         for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
-            // First pass: combine as many tiles as possible.
-            for (int column = CoreConstants.BOARD_DIMENSION - 1; column > 0; column--) {
-                int currentNum = newBoard.board[row][column];
-                int tempIndex = column - 1;
-                // If two tiles (with zero or more empty tiles between them) contain
-                // same numbers, they can combine.
-                while (currentNum != 0 && tempIndex >= 0) {
-                    if (newBoard.board[row][tempIndex] != 0
-                            && newBoard.board[row][tempIndex] != currentNum)
-                        break;
-                    else if (newBoard.board[row][tempIndex] == currentNum) {
-                        newBoard.board[row][column] *= 2;
-                        newBoard.board[row][tempIndex] = 0;
-                        newBoard.scores += (currentNum * 2);
-                        break;
-                    } else
-                        tempIndex--;
-                }
-            }
-            // Second pass: shift all the tiles to as right as possible.
-            for (int column = CoreConstants.BOARD_DIMENSION - 2; column >= 0; column--) {
-                if (newBoard.board[row][column] != 0) {
-                    int tempIndex = column;
-                    while (tempIndex < CoreConstants.BOARD_DIMENSION - 1
-                            && newBoard.board[row][tempIndex + 1] == 0) {
-                        Utility.swap(newBoard.board[row], tempIndex, tempIndex + 1);
-                        tempIndex++;
-                    }
-                }
-            }
+            // Look up the moved row and the scores gained in the move tables.
+            int line = MoveTables.packLine(newBoard.board[row]);
+            newBoard.scores += MoveTables.getRightScore(line);
+            MoveTables.unpackLine(MoveTables.moveRowRight(line), newBoard.board[row]);
         }
         // Having moved validly, place a new number (2 or 4) randomly on the board.
         if (isValidMove(newBoard))
@@ -252,36 +308,12 @@ public class Board implements Cloneable {
      */
     private Board moveUp() {
         Board newBoard = clone();
+        int[] numbers = new int[CoreConstants.BOARD_DIMENSION];
         for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
-            // First pass: combine as many tiles as possible.
-            for (int row = 0; row < CoreConstants.BOARD_DIMENSION - 1; row++) {
-                int currentNum = newBoard.board[row][column];
-                int tempIndex = row + 1;
-                // If two tiles (with zero or more empty tiles between them) contain
-                // same numbers, they can combine.
-                while (currentNum != 0 && tempIndex <= CoreConstants.BOARD_DIMENSION - 1) {
-                    if (newBoard.board[tempIndex][column] != 0
-                            && newBoard.board[tempIndex][column] != currentNum)
-                        break;
-                    else if (newBoard.board[tempIndex][column] == currentNum) {
-                        newBoard.board[row][column] *= 2;
-                        newBoard.board[tempIndex][column] = 0;
-                        newBoard.scores += (currentNum * 2);
-                        break;
-                    } else
-                        tempIndex++;
-                }
-            }
-            // Second pass: shift all the tiles to as top as possible.
-            for (int row = 1; row < CoreConstants.BOARD_DIMENSION; row++) {
-                if (newBoard.board[row][column] != 0) {
-                    int tempIndex = row;
-                    while (tempIndex > 0 && newBoard.board[tempIndex - 1][column] == 0) {
-                        Utility.swap(newBoard.board, column, tempIndex - 1, tempIndex);
-                        tempIndex--;
-                    }
-                }
-            }
+            // A column moves up in the same way as a row moves left.
+            int line = newBoard.packColumn(column, numbers);
+            newBoard.scores += MoveTables.getLeftScore(line);
+            newBoard.unpackColumn(MoveTables.moveRowLeft(line), column, numbers);
         }
         // Having moved validly, place a new number (2 or 4) randomly on the board.
         if (isValidMove(newBoard))
@@ -298,37 +330,12 @@ public class Board implements Cloneable {
      */
     private Board moveDown() {
         Board newBoard = clone();
+        int[] numbers = new int[CoreConstants.BOARD_DIMENSION];
         for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
-            // First pass: combine as many tiles as possible.
-            for (int row = CoreConstants.BOARD_DIMENSION - 1; row > 0; row--) {
-                int currentNum = newBoard.board[row][column];
-                int tempIndex = row - 1;
-                // If two tiles (with zero or more empty tiles between them) contain
-                // same numbers, they can combine.
-                while (currentNum != 0 && tempIndex >= 0) {
-                    if (newBoard.board[tempIndex][column] != 0
-                            && newBoard.board[tempIndex][column] != currentNum)
-                        break;
-                    else if (newBoard.board[tempIndex][column] == currentNum) {
-                        newBoard.board[row][column] *= 2;
-                        newBoard.board[tempIndex][column] = 0;
-                        newBoard.scores += (currentNum * 2);
-                        break;
-                    } else
-                        tempIndex--;
-                }
-            }
-            // Second pass: shift all the tiles to as bottom as possible.
-            for (int row = CoreConstants.BOARD_DIMENSION - 2; row >= 0; row--) {
-                if (newBoard.board[row][column] != 0) {
-                    int tempIndex = row;
-                    while (tempIndex < CoreConstants.BOARD_DIMENSION - 1
-                            && newBoard.board[tempIndex + 1][column] == 0) {
-                        Utility.swap(newBoard.board, column, tempIndex, tempIndex + 1);
-                        tempIndex++;
-                    }
-                }
-            }
+            // A column moves down in the same way as a row moves right.
+            int line = newBoard.packColumn(column, numbers);
+            newBoard.scores += MoveTables.getRightScore(line);
+            newBoard.unpackColumn(MoveTables.moveRowRight(line), column, numbers);
         }
         // Having moved validly, place a new number (2 or 4) randomly on the board.
         if (isValidMove(newBoard))
@@ -338,6 +345,34 @@ public class Board implements Cloneable {
     }
 
 
+    /**
+     * Encodes a column of the board, from top to bottom, as a line of the move
+     * tables.
+     * @param column the column index
+     * @param numbers a temporary array to hold the numbers of the column
+     * @return the encoded column
+     */
+    private int packColumn(int column, int[] numbers) {
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            numbers[row] = board[row][column];
+        return MoveTables.packLine(numbers);
+    }
+
+
+    /**
+     * Writes an encoded line of the move tables back to a column of the board,
+     * from top to bottom.
+     * @param line the encoded line
+     * @param column the column index
+     * @param numbers a temporary array to hold the numbers of the column
+     */
+    private void unpackColumn(int line, int column, int[] numbers) {
+        MoveTables.unpackLine(line, numbers);
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            board[row][column] = numbers[row];
+    }
+
+
     /**
      * Determines if the game board actually moved after a move action. No matter
      * what happens, first try moving it to get a new board, then compare it to
@@ -379,6 +414,52 @@ public class Board implements Cloneable {
     }
 
 
+    /**
+     * Moves the current game board to the given direction in place and adds a
+     * new number, exactly as {@link #move(Directions)} would (drawing the same
+     * numbers from the spawn source), after pushing the previous state onto the
+     * undo stack. Nothing is allocated unless the undo stack has to grow.
+     * @param direction the given direction
+     * @return true if the move is valid and has been made; false otherwise, in
+     *         which case the board and the undo stack are left unchanged
+     */
+    public boolean makeMove(Directions direction) {
+        long tiles = BitBoard.pack(board);
+        long movedTiles = BitBoard.move(tiles, direction);
+        if (movedTiles == tiles)
+            return false;
+
+        if (undoTiles == null) {
+            undoTiles = new long[CoreConstants.UNDO_STACK_INITIAL_CAPACITY];
+            undoScores = new int[CoreConstants.UNDO_STACK_INITIAL_CAPACITY];
+        } else if (undoDepth == undoTiles.length) {
+            undoTiles = Arrays.copyOf(undoTiles, 2 * undoDepth);
+            undoScores = Arrays.copyOf(undoScores, 2 * undoDepth);
+        }
+        undoTiles[undoDepth] = tiles;
+        undoScores[undoDepth] = scores;
+        undoDepth++;
+
+        scores += BitBoard.getMoveScore(tiles, direction);
+        BitBoard.unpack(BitBoard.addNumber(movedTiles), board);
+        return true;
+    }
+
+
+    /**
+     * Restores the game board to the state before the last move made in place
+     * by {@link #makeMove(Directions)}, and pops it from the undo stack.
+     * @throws IllegalStateException if no move has been made in place
+     */
+    public void unmakeMove() {
+        if (undoDepth == 0)
+            throw new IllegalStateException("No move to unmake");
+        undoDepth--;
+        BitBoard.unpack(undoTiles[undoDepth], board);
+        scores = undoScores[undoDepth];
+    }
+
+
     /**
      * Determines the weight of a tile at the given location. The weight is
      * calculated as follows:
@@ -436,6 +517,40 @@ public class Board implements Cloneable {
     }
 
 
+    /**
+     * Calculates the evaluation value of the current game board with the given
+     * evaluation function.
+     * @param evaluator the evaluation function, or null to use
+     *                  {@link #evaluate(int)}
+     * @param steps the steps taken up to now
+     * @return the evaluation value of the board
+     */
+    public double evaluate(Evaluator evaluator, int steps) {
+        return (evaluator == null) ? evaluate(steps) : evaluator.evaluate(BitBoard.pack(board));
+    }
+
+
+    /**
+     * Compares this game board with another object.
+     * @param o the other object
+     * @return true if both the numbers of all tiles and the scores are
+     *         identical; false otherwise
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Board))
+            return false;
+        Board other = (Board) o;
+        return scores == other.scores && Arrays.deepEquals(board, other.board);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.deepHashCode(board) + scores;
+    }
+
+
     /**
      * Returns a formatted string which contains all the information of the board
      * and tiles, and it can be used later to output to the screen, a file, etc..
@@ -0,0 +1,94 @@
+package yutongz1997.auto2048.core;
+
+import java.util.Arrays;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+
+
+/**
+ * The class of an immutable snapshot of a game board: the numbers of all tiles
+ * and the scores at the moment it is taken (see {@link Board#snapshot()}). It
+ * can be handed to any thread and read at any time, and is cheaper to keep
+ * than a {@link Board} since it holds a single flat array.
+ * @author Yutong Zhang
+ */
+public final class BoardSnapshot {
+    // The numbers of all tiles in row-major order.
+    private final int[] numbers;
+    // The scores of the player.
+    private final int scores;
+
+
+    /**
+     * Constructs a snapshot object by copying the given numbers.
+     * @param board the numbers of all tiles
+     * @param scores the scores of the player
+     */
+    BoardSnapshot(int[][] board, int scores) {
+        numbers = new int[CoreConstants.BOARD_DIMENSION * CoreConstants.BOARD_DIMENSION];
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            System.arraycopy(board[row], 0, numbers, row * CoreConstants.BOARD_DIMENSION,
+                    CoreConstants.BOARD_DIMENSION);
+        this.scores = scores;
+    }
+
+
+    /**
+     * Returns the number of a tile.
+     * @param row the row index of the tile
+     * @param column the column index of the tile
+     * @return the number of the tile (0 for an empty tile)
+     */
+    public int getNumber(int row, int column) {
+        return numbers[row * CoreConstants.BOARD_DIMENSION + column];
+    }
+
+
+    /**
+     * Returns the scores of the player.
+     * @return the scores
+     */
+    public int getScores() {
+        return scores;
+    }
+
+
+    /**
+     * Returns the maximum number on the board.
+     * @return the maximum number
+     */
+    public int getMaxTile() {
+        int maxTile = 0;
+        for (int number : numbers)
+            maxTile = Math.max(maxTile, number);
+        return maxTile;
+    }
+
+
+    /**
+     * Converts the snapshot back to a game board which can be played.
+     * @return a new game board with the same numbers and scores
+     */
+    public Board toBoard() {
+        int[][] board = new int[CoreConstants.BOARD_DIMENSION][CoreConstants.BOARD_DIMENSION];
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++)
+            System.arraycopy(numbers, row * CoreConstants.BOARD_DIMENSION, board[row], 0,
+                    CoreConstants.BOARD_DIMENSION);
+        return new Board(board, scores);
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BoardSnapshot))
+            return false;
+        BoardSnapshot other = (BoardSnapshot) o;
+        return scores == other.scores && Arrays.equals(numbers, other.numbers);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(numbers) + scores;
+    }
+}
@@ -0,0 +1,63 @@
+package yutongz1997.auto2048.core;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The class of the token through which a running search is cancelled. The
+ * cancellation is cooperative: the searches check the token once in a while as
+ * they build or walk their trees, and throw a {@link CancellationException} as
+ * soon as it has been cancelled, so the thread asking for it never has to wait
+ * for a whole decision. A token can be cancelled from any thread, only once,
+ * and stays cancelled.
+ * <p>The thread running the searches may also wait on the token instead of
+ * sleeping (see {@link #awaitCancellation(long, TimeUnit)}), so that it wakes up
+ * as soon as it is cancelled.</p>
+ * @author Yutong Zhang
+ */
+public class CancellationToken {
+    // The latch released when the token is cancelled.
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+
+
+    /**
+     * Cancels the token, and wakes up the threads waiting on it.
+     */
+    public void cancel() {
+        cancelled.countDown();
+    }
+
+
+    /**
+     * Determines whether the token has been cancelled.
+     * @return true if the token has been cancelled; false otherwise
+     */
+    public boolean isCancelled() {
+        return cancelled.getCount() == 0;
+    }
+
+
+    /**
+     * Gives up the current search if the token has been cancelled.
+     * @throws CancellationException if the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (isCancelled())
+            throw new CancellationException("The search has been cancelled");
+    }
+
+
+    /**
+     * Waits until the token is cancelled or the given time passes.
+     * @param timeout the maximum time to wait (nothing is waited if it is not
+     *                positive)
+     * @param unit the unit of the time
+     * @return true if the token has been cancelled; false if the time has passed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitCancellation(long timeout, TimeUnit unit) throws InterruptedException {
+        return cancelled.await(timeout, unit);
+    }
+}
@@ -0,0 +1,226 @@
+package yutongz1997.auto2048.core;
+
+import yutongz1997.auto2048.lib.CoreConstants.Directions;
+
+
+/**
+ * The class of the depth first search for the auto player. It makes exactly
+ * the same choice as {@link SearchTree}: among all the boards in the deepest
+ * reachable level (but not deeper than the maximum level), the one with the
+ * maximum evaluation is picked, ties broken in the order of the directions,
+ * and its ancestor in the first level is the next step. However, the boards are
+ * generated and evaluated recursively as they are reached, and only the path
+ * from the root to the current board is kept, so the memory needed grows with
+ * the maximum level instead of with the size of the whole tree.
+ * <p>Below the first level, every board is reached by moving the board of its
+ * first level ancestor in place and restored on the way back (see
+ * {@link Board#makeMove(Directions)}), so no board is allocated per node, and
+ * the first level boards are exactly as they were once the search ends.</p>
+ * @author Yutong Zhang
+ */
+public class DepthFirstSearch {
+    // The deadline and the cancellation token are checked once every
+    // (STOP_CHECK_MASK + 1) boards.
+    private static final int STOP_CHECK_MASK = 0xFF;
+    // All the directions (Directions.values() copies the array every time).
+    private static final Directions[] DIRECTIONS = Directions.values();
+
+    // The board at the root of the search.
+    private Board root;
+    // The maximum level / depth of the search.
+    private int maximumLevel;
+    // The evaluation function of the boards (null for Board.evaluate(int)).
+    private Evaluator evaluator;
+    // The best result found so far: the level of the evaluated boards, the
+    // maximum evaluation among them, and the first level board leading to it.
+    private int bestLevel;
+    private double maxEvaluationValue;
+    private Board bestNextStep;
+    // The time (in terms of System.nanoTime()) by which the search must stop,
+    // and whether the search has been stopped by it.
+    private long deadline;
+    private boolean hasDeadline;
+    private boolean timedOut;
+    // The token cancelling the search (null if it cannot be cancelled).
+    private CancellationToken cancellationToken;
+    // The number of boards generated so far, which is also used to check the
+    // deadline and the token only once in a while.
+    private long generatedBoardNumber;
+
+
+    /**
+     * Constructs a depth first search object based on the current game board.
+     * @param gameBoard the current game board
+     * @param maximumLevel the maximum level / depth of the search
+     */
+    public DepthFirstSearch(Board gameBoard, int maximumLevel) {
+        root = gameBoard;
+        this.maximumLevel = maximumLevel;
+    }
+
+
+    /**
+     * Constructs a depth first search object based on the current game board,
+     * which gives up once the given deadline passes.
+     * @param gameBoard the current game board
+     * @param maximumLevel the maximum level / depth of the search
+     * @param deadline the time (in terms of System.nanoTime()) by which the
+     *                 search must stop
+     */
+    public DepthFirstSearch(Board gameBoard, int maximumLevel, long deadline) {
+        this(gameBoard, maximumLevel);
+        this.deadline = deadline;
+        hasDeadline = true;
+    }
+
+
+    /**
+     * Sets the evaluation function of the boards compared by the search. Since
+     * the comparison starts from zero, the function should not give negative
+     * values to good boards.
+     * @param evaluator the evaluation function, or null to use
+     *                  {@link Board#evaluate(int)}
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+
+    /**
+     * Sets the token through which the search can be cancelled from another
+     * thread. Unlike the deadline, a cancellation gives up the whole search by
+     * throwing a {@link java.util.concurrent.CancellationException}.
+     * @param cancellationToken the token, or null if the search cannot be
+     *                          cancelled
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+
+    /**
+     * Determines whether the last search has been given up because the deadline
+     * passed, in which case its result must not be used.
+     * @return true if the search has timed out; false otherwise
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+
+    /**
+     * Returns the number of boards generated below the root by the last search.
+     * @return the number of generated boards
+     */
+    public long getNodeCount() {
+        return generatedBoardNumber;
+    }
+
+
+    /**
+     * Searches all the boards reachable from the root depth first, and returns
+     * the next step's game board leading to the one with the maximum evaluation.
+     * @param steps the total steps of the game up to now (which is used to compute
+     *              the evaluation value of a board)
+     * @return the next step's game board, or null if the root cannot move
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through its token
+     */
+    public Board nextStep(int steps) {
+        reset();
+        for (Directions direction : DIRECTIONS) {
+            Board nextStep = root.move(direction);
+            if (nextStep != null)
+                search(nextStep, 1, nextStep, steps);
+        }
+        return timedOut ? null : bestNextStep;
+    }
+
+
+    /**
+     * Forgets the best result found so far.
+     */
+    void reset() {
+        bestLevel = 0;
+        maxEvaluationValue = 0;
+        bestNextStep = null;
+        timedOut = false;
+        generatedBoardNumber = 0;
+    }
+
+
+    /**
+     * Returns the level of the boards compared so far, i.e. the deepest level
+     * reached.
+     * @return the deepest level reached
+     */
+    int getBestLevel() {
+        return bestLevel;
+    }
+
+
+    /**
+     * Returns the maximum evaluation among the boards compared so far, which is
+     * never less than zero.
+     * @return the maximum evaluation
+     */
+    double getMaxEvaluationValue() {
+        return maxEvaluationValue;
+    }
+
+
+    /**
+     * Recursively searches the boards below a given board, and evaluates the
+     * board if it is in the maximum level or cannot move any more. The given
+     * board is moved in place while its subtree is searched, and restored
+     * before returning.
+     * @param gameBoard the given board
+     * @param level the level of the given board
+     * @param nextStep the board in the first level which the given board comes from
+     * @param steps the total steps of the game up to now
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through its token, in which case the given board is
+     *         left moved
+     */
+    void search(Board gameBoard, int level, Board nextStep, int steps) {
+        if (timedOut)
+            return;
+        generatedBoardNumber++;
+        if ((generatedBoardNumber & STOP_CHECK_MASK) == 0) {
+            if (cancellationToken != null)
+                cancellationToken.throwIfCancelled();
+            if (hasDeadline && System.nanoTime() - deadline >= 0) {
+                timedOut = true;
+                return;
+            }
+        }
+        if (level < maximumLevel) {
+            boolean isLeaf = true;
+            for (Directions direction : DIRECTIONS) {
+                // If the current board is not movable in a given direction, no
+                // deeper board will be searched along this direction.
+                if (gameBoard.makeMove(direction)) {
+                    isLeaf = false;
+                    search(gameBoard, level + 1, nextStep, steps);
+                    gameBoard.unmakeMove();
+                }
+            }
+            if (!isLeaf)
+                return;
+        }
+        // Only the boards in the deepest reachable level are compared, and the
+        // comparison starts from zero again once a deeper level is reached.
+        if (level > bestLevel) {
+            bestLevel = level;
+            maxEvaluationValue = 0;
+            bestNextStep = nextStep;
+        }
+        if (level == bestLevel) {
+            double evaluationValue = gameBoard.evaluate(evaluator, steps);
+            if (evaluationValue > maxEvaluationValue) {
+                maxEvaluationValue = evaluationValue;
+                bestNextStep = nextStep;
+            }
+        }
+    }
+}
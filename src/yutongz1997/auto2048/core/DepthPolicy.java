@@ -0,0 +1,50 @@
+package yutongz1997.auto2048.core;
+
+
+/**
+ * The interface of the policies choosing the depth of the search for every
+ * move, based on how complex the board is.
+ * @author Yutong Zhang
+ */
+public interface DepthPolicy {
+    /**
+     * Chooses the depth of the search for a board with the given features.
+     * @param emptyTileNumber the number of empty tiles
+     * @param distinctTileNumber the number of distinct numbers on the board
+     * @param maxTile the maximum number on the board
+     * @return the depth of the search
+     */
+    int getDepth(int emptyTileNumber, int distinctTileNumber, int maxTile);
+
+
+    /**
+     * Returns the policy which always chooses the same depth.
+     * @param depth the depth of the search
+     * @return the policy with a fixed depth
+     */
+    static DepthPolicy fixed(int depth) {
+        return (emptyTileNumber, distinctTileNumber, maxTile) -> depth;
+    }
+
+
+    /**
+     * Chooses the depth of the search for a game board.
+     * @param gameBoard the game board
+     * @return the depth of the search
+     */
+    default int getDepth(Board gameBoard) {
+        return getDepth(gameBoard.getEmptyTileNumber(), gameBoard.getDistinctTileNumber(),
+                gameBoard.getMaxTile());
+    }
+
+
+    /**
+     * Chooses the depth of the search for a packed board.
+     * @param board the packed board
+     * @return the depth of the search
+     */
+    default int getDepth(long board) {
+        return getDepth(BitBoard.getEmptyTileNumber(board), BitBoard.getDistinctTileNumber(board),
+                BitBoard.getMaxTile(board));
+    }
+}
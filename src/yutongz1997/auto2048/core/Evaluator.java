@@ -0,0 +1,19 @@
+package yutongz1997.auto2048.core;
+
+
+/**
+ * The interface of the evaluation functions used by the searches on packed
+ * boards (see {@link BitBoard}). An evaluation function only looks at the tiles
+ * of a board, so that equal boards always have equal evaluations no matter how
+ * they are reached.
+ * @author Yutong Zhang
+ */
+public interface Evaluator {
+    /**
+     * Calculates the evaluation value of a packed board. The larger the value
+     * is, the better the board is.
+     * @param board the packed board
+     * @return the evaluation value of the board
+     */
+    double evaluate(long board);
+}
@@ -0,0 +1,300 @@
+package yutongz1997.auto2048.core;
+
+import java.util.Arrays;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.Directions;
+
+
+/**
+ * The class of the expectimax search on packed boards (see {@link BitBoard}).
+ * Unlike the search tree, which follows a single randomly spawned tile after
+ * every move, the search alternates max nodes, where the player picks the best
+ * of the four directions, and chance nodes, where every empty tile may receive
+ * a 2 or a 4 with their real possibilities. The value of a chance node is
+ * therefore the expected value of all the boards that may appear after a move.
+ * <p>A branch reached only through unlikely spawns (e.g. several 4s in a row)
+ * costs as much to search as a likely one while hardly changing the expected
+ * value, so once the cumulative possibility of a branch falls below the
+ * probability cutoff threshold, the board is evaluated directly instead of
+ * being expanded further.</p>
+ * <p>An object of this class is not thread-safe; use one object per thread.</p>
+ * @author Yutong Zhang
+ */
+public class Expectimax {
+    // The possibilities to spawn a number 2 and a number 4.
+    private static final double NUMBER_2_POSSIBILITY = 1 - CoreConstants.NUMBER_4_POSSIBILITY;
+    // The exponents of a spawned number 2 and a spawned number 4.
+    private static final int EXPONENT_2 = 1;
+    private static final int EXPONENT_4 = 2;
+    // The evaluation value of a board on which the game is over.
+    private static final double GAME_OVER_VALUE = 0;
+    // The cancellation token is checked once every (CANCELLATION_CHECK_MASK + 1)
+    // nodes.
+    private static final int CANCELLATION_CHECK_MASK = 0xFF;
+
+    // The evaluation function of the leaves.
+    private Evaluator evaluator;
+    // The transposition table shared by all searches (null if not used).
+    private TranspositionTable transpositionTable;
+    // The cumulative possibility below which a branch is not expanded any more.
+    private double probabilityThreshold = CoreConstants.PROBABILITY_CUTOFF_DEFAULT_THRESHOLD;
+    // The number of nodes visited by the last search.
+    private long nodeCount;
+    // The number of nodes evaluated early by the last search because of the
+    // probability cutoff.
+    private long prunedNodeCount;
+    // The token cancelling the search (null if it cannot be cancelled).
+    private CancellationToken cancellationToken;
+
+
+    /**
+     * Constructs an expectimax search object with the default evaluation function.
+     */
+    public Expectimax() {
+        this(new HeuristicEvaluator());
+    }
+
+
+    /**
+     * Constructs an expectimax search object with the given evaluation function.
+     * @param evaluator the evaluation function of the leaves
+     */
+    public Expectimax(Evaluator evaluator) {
+        this(evaluator, null);
+    }
+
+
+    /**
+     * Constructs an expectimax search object with the given evaluation function
+     * and transposition table. The values of the chance nodes are kept in the
+     * table across searches, so the evaluation function must give the same
+     * value to all the rotations and reflections of a board.
+     * @param evaluator the evaluation function of the leaves
+     * @param transpositionTable the transposition table, or null if not used
+     */
+    public Expectimax(Evaluator evaluator, TranspositionTable transpositionTable) {
+        this.evaluator = evaluator;
+        this.transpositionTable = transpositionTable;
+    }
+
+
+    /**
+     * Returns the transposition table used by the searches.
+     * @return the transposition table, or null if not used
+     */
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+
+    /**
+     * Returns the threshold of the probability cutoff.
+     * @return the threshold of the cumulative possibility
+     */
+    public double getProbabilityThreshold() {
+        return probabilityThreshold;
+    }
+
+
+    /**
+     * Sets the threshold of the probability cutoff. A branch whose cumulative
+     * possibility is below the threshold is evaluated directly instead of being
+     * expanded further; a threshold of 0 disables the cutoff.
+     * @param probabilityThreshold the threshold of the cumulative possibility
+     */
+    public void setProbabilityThreshold(double probabilityThreshold) {
+        if (probabilityThreshold < 0 || probabilityThreshold > 1)
+            throw new IllegalArgumentException("The threshold must be between 0 and 1");
+        this.probabilityThreshold = probabilityThreshold;
+    }
+
+
+    /**
+     * Sets the token through which the search can be cancelled from another
+     * thread.
+     * @param cancellationToken the token, or null if the search cannot be
+     *                          cancelled
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+
+    /**
+     * Returns the number of nodes (both max nodes and chance nodes) visited by
+     * the last search.
+     * @return the number of nodes
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+
+    /**
+     * Returns the number of nodes evaluated early by the last search because
+     * their cumulative possibilities are below the threshold.
+     * @return the number of pruned nodes
+     */
+    public long getPrunedNodeCount() {
+        return prunedNodeCount;
+    }
+
+
+    /**
+     * Searches the best direction for a game board.
+     * @param gameBoard the game board
+     * @param depth the number of moves to look ahead (at least 1)
+     * @return the result of the search
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through its token
+     */
+    public Result search(Board gameBoard, int depth) {
+        return search(BitBoard.pack(gameBoard.getBoard()), depth);
+    }
+
+
+    /**
+     * Searches the best direction for a packed board.
+     * @param board the packed board
+     * @param depth the number of moves to look ahead (at least 1)
+     * @return the result of the search
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through its token
+     */
+    public Result search(long board, int depth) {
+        nodeCount = 0;
+        prunedNodeCount = 0;
+        double[] expectedValues = new double[CoreConstants.DIRECTION_NUMBER];
+        Arrays.fill(expectedValues, Double.NEGATIVE_INFINITY);
+        Directions bestDirection = null;
+        for (Directions direction : Directions.values()) {
+            long movedBoard = BitBoard.move(board, direction);
+            // An invalid move has no expected value and is never chosen.
+            if (movedBoard == board)
+                continue;
+            int directionIndex = direction.getDirectionIndex();
+            expectedValues[directionIndex] = evaluateChanceNode(movedBoard, Math.max(depth, 1) - 1, 1);
+            if (bestDirection == null
+                    || expectedValues[directionIndex] > expectedValues[bestDirection.getDirectionIndex()])
+                bestDirection = direction;
+        }
+        return new Result(bestDirection, expectedValues);
+    }
+
+
+    /**
+     * Calculates the value of a max node, i.e. a board on which the player is
+     * going to move.
+     * @param board the packed board
+     * @param depth the remaining number of moves to look ahead
+     * @param probability the cumulative possibility of reaching the node
+     * @return the value of the node
+     */
+    private double evaluateMaxNode(long board, int depth, double probability) {
+        if ((++nodeCount & CANCELLATION_CHECK_MASK) == 0 && cancellationToken != null)
+            cancellationToken.throwIfCancelled();
+        if (depth == 0)
+            return evaluator.evaluate(board);
+        if (probability < probabilityThreshold) {
+            prunedNodeCount++;
+            return evaluator.evaluate(board);
+        }
+
+        double maxValue = GAME_OVER_VALUE;
+        for (Directions direction : Directions.values()) {
+            long movedBoard = BitBoard.move(board, direction);
+            if (movedBoard != board)
+                maxValue = Math.max(maxValue, evaluateChanceNode(movedBoard, depth - 1, probability));
+        }
+        return maxValue;
+    }
+
+
+    /**
+     * Calculates the value of a chance node, i.e. a board which has just been
+     * moved and is waiting for a new number. The value is the average over all
+     * empty tiles of the values of spawning a 2 or a 4 in it, weighted by their
+     * possibilities. The values stored in the transposition table are those
+     * found with the cutoff, so they are stored with the possibility of
+     * reaching the node, and only reused for nodes reached at most as likely
+     * (see {@link TranspositionTable}). Without the cutoff, every value is exact
+     * and reused regardless of the possibility.
+     * @param board the packed board
+     * @param depth the remaining number of moves to look ahead
+     * @param probability the cumulative possibility of reaching the node
+     * @return the value of the node
+     */
+    private double evaluateChanceNode(long board, int depth, double probability) {
+        nodeCount++;
+        int emptyTileNumber = BitBoard.getEmptyTileNumber(board);
+        if (emptyTileNumber == 0)
+            return evaluateMaxNode(board, depth, probability);
+
+        long canonicalBoard = 0;
+        double storedProbability = (probabilityThreshold > 0) ? probability : 1;
+        if (transpositionTable != null) {
+            canonicalBoard = BitBoard.getCanonical(board);
+            double storedValue = transpositionTable.probe(canonicalBoard, depth, storedProbability);
+            if (!Double.isNaN(storedValue))
+                return storedValue;
+        }
+        double number2Probability = probability * NUMBER_2_POSSIBILITY / emptyTileNumber;
+        double number4Probability = probability * CoreConstants.NUMBER_4_POSSIBILITY / emptyTileNumber;
+        double expectedValue = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += MoveTables.TILE_BITS) {
+            if (((board >>> shift) & MoveTables.TILE_MASK) != 0)
+                continue;
+            expectedValue += NUMBER_2_POSSIBILITY
+                    * evaluateMaxNode(board | ((long) EXPONENT_2 << shift), depth, number2Probability);
+            expectedValue += CoreConstants.NUMBER_4_POSSIBILITY
+                    * evaluateMaxNode(board | ((long) EXPONENT_4 << shift), depth, number4Probability);
+        }
+        expectedValue /= emptyTileNumber;
+        if (transpositionTable != null)
+            transpositionTable.store(canonicalBoard, depth, storedProbability, expectedValue);
+        return expectedValue;
+    }
+
+
+    /**
+     * The class containing the result of a search: the best direction and the
+     * expected values of all directions.
+     */
+    public static class Result {
+        private final Directions bestDirection;
+        private final double[] expectedValues;
+
+
+        /**
+         * Constructs a search result object.
+         * @param bestDirection the best direction, or null if no move is valid
+         * @param expectedValues the expected values of all directions, indexed by
+         *                       the direction indices
+         */
+        Result(Directions bestDirection, double[] expectedValues) {
+            this.bestDirection = bestDirection;
+            this.expectedValues = expectedValues;
+        }
+
+
+        /**
+         * Returns the direction with the largest expected value.
+         * @return the best direction, or null if no move is valid (i.e. the game
+         *         is over)
+         */
+        public Directions getBestDirection() {
+            return bestDirection;
+        }
+
+
+        /**
+         * Returns the expected value of moving to the given direction.
+         * @param direction the given direction
+         * @return the expected value, or negative infinity if the move is invalid
+         */
+        public double getExpectedValue(Directions direction) {
+            return expectedValues[direction.getDirectionIndex()];
+        }
+    }
+}
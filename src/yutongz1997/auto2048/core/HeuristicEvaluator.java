@@ -0,0 +1,70 @@
+package yutongz1997.auto2048.core;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.Weights;
+
+
+/**
+ * The evaluation function with the same heuristics as {@link Board#evaluate(int)},
+ * adapted to packed boards. Since the scores depend on how a board is reached
+ * (a spawned 4 is never counted), they are estimated from the tiles themselves,
+ * as if every spawned tile were a 2.
+ * @author Yutong Zhang
+ */
+public class HeuristicEvaluator implements Evaluator {
+    // The weights of all tile positions, in row-major order.
+    private static final int[] positionWeights;
+    static {
+        int last = CoreConstants.BOARD_DIMENSION - 1;
+        positionWeights = new int[CoreConstants.BOARD_DIMENSION * CoreConstants.BOARD_DIMENSION];
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
+                boolean rowOnSide = (row == 0 || row == last);
+                boolean columnOnSide = (column == 0 || column == last);
+                Weights weight;
+                if (rowOnSide && columnOnSide)
+                    weight = Weights.CORNER;
+                else if (rowOnSide || columnOnSide)
+                    weight = Weights.SIDE;
+                else
+                    weight = Weights.OTHER;
+                positionWeights[row * CoreConstants.BOARD_DIMENSION + column] = weight.getWeight();
+            }
+        }
+    }
+
+
+    /**
+     * Calculates the evaluation value, defined as the sum of following values,
+     * of a packed board:
+     *     <p>(a) the square of the estimated scores of the board;</p>
+     *     <p>(b) the square of the maximum number presented on the board;</p>
+     *     <p>(c) a constant value 'WEIGHT_EMPTY' times the number of empty tiles;</p>
+     *     <p>(d) the weights of all tiles.</p>
+     * @param board the packed board
+     * @return the evaluation value of the board
+     */
+    @Override
+    public double evaluate(long board) {
+        double estimatedScores = 0;
+        double tileWeights = 0;
+        int maxTile = 0;
+        int emptyTileNumber = 0;
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
+                int exponent = BitBoard.getExponent(board, row, column);
+                if (exponent == 0) {
+                    emptyTileNumber++;
+                    continue;
+                }
+                int number = MoveTables.toNumber(exponent);
+                // Building a tile of 2^n from tiles of 2 gains (n - 1) * 2^n scores.
+                estimatedScores += (double) (exponent - 1) * number;
+                tileWeights += (double) number * positionWeights[row * CoreConstants.BOARD_DIMENSION + column];
+                maxTile = Math.max(maxTile, number);
+            }
+        }
+        return estimatedScores * estimatedScores + (double) maxTile * maxTile
+                + emptyTileNumber * Weights.EMPTY.getWeight() + tileWeights;
+    }
+}
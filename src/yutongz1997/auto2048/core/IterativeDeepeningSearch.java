@@ -0,0 +1,134 @@
+package yutongz1997.auto2048.core;
+
+import java.util.concurrent.TimeUnit;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+
+
+/**
+ * The class of the time-budgeted iterative deepening search for the auto player.
+ * The board is searched depth first one level deeper at a time, until the time
+ * budget of the move runs out; the search of the level being searched at that
+ * moment is given up, and the next step found by the deepest finished level is
+ * returned. Quiet positions and critical ones therefore take the same time,
+ * while the depth follows how fast each level can be searched.
+ * @author Yutong Zhang
+ */
+public class IterativeDeepeningSearch {
+    // The board at the root of the search.
+    private Board root;
+    // The maximum level / depth of the search.
+    private int maximumLevel;
+    // The time budget of the search in milliseconds.
+    private long timeBudget;
+    // The evaluation function of the boards (null for Board.evaluate(int)).
+    private Evaluator evaluator;
+    // The token cancelling the search (null if it cannot be cancelled).
+    private CancellationToken cancellationToken;
+    // The deepest level finished by the last search.
+    private int finishedLevel;
+    // The number of boards generated by all levels of the last search.
+    private long nodeCount;
+
+
+    /**
+     * Constructs an iterative deepening search object based on the current game
+     * board.
+     * @param gameBoard the current game board
+     * @param maximumLevel the maximum level / depth of the search, beyond which
+     *                     the search stops even if there is time left
+     * @param timeBudget the time budget of the search in milliseconds
+     */
+    public IterativeDeepeningSearch(Board gameBoard, int maximumLevel, long timeBudget) {
+        root = gameBoard;
+        this.maximumLevel = maximumLevel;
+        this.timeBudget = timeBudget;
+    }
+
+
+    /**
+     * Returns the deepest level finished by the last search.
+     * @return the deepest finished level
+     */
+    public int getFinishedLevel() {
+        return finishedLevel;
+    }
+
+
+    /**
+     * Returns the number of boards generated by all levels of the last search,
+     * including the level given up.
+     * @return the number of generated boards
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+
+    /**
+     * Sets the evaluation function of the boards compared by the search. Since
+     * the comparison starts from zero, the function should not give negative
+     * values to good boards.
+     * @param evaluator the evaluation function, or null to use
+     *                  {@link Board#evaluate(int)}
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+
+    /**
+     * Sets the token through which the search can be cancelled from another
+     * thread. Unlike the time budget, a cancellation gives up every level,
+     * including the finished ones.
+     * @param cancellationToken the token, or null if the search cannot be
+     *                          cancelled
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+
+    /**
+     * Searches deeper and deeper until the time budget runs out, and returns the
+     * next step's game board found by the deepest finished level. The first
+     * level is always finished, even if it takes longer than the budget.
+     * @param steps the total steps of the game up to now (which is used to compute
+     *              the evaluation value of a board)
+     * @return the next step's game board, or null if the root cannot move
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through its token
+     */
+    public Board nextStep(int steps) {
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeBudget);
+        DepthFirstSearch search = new DepthFirstSearch(root, 1);
+        search.setEvaluator(evaluator);
+        search.setCancellationToken(cancellationToken);
+        Board bestNextStep = search.nextStep(steps);
+        finishedLevel = 1;
+        nodeCount = search.getNodeCount();
+        long lastLevelTime = System.nanoTime() - startTime;
+
+        // Stop deepening if the tree cannot grow any more (which happens during
+        // the very last steps of the game).
+        for (int level = 2; level <= maximumLevel && search.getBestLevel() == level - 1; level++) {
+            long levelStartTime = System.nanoTime();
+            // A level takes roughly as long as the previous one times the number
+            // of directions, so do not start one that cannot finish.
+            if (deadline - levelStartTime < lastLevelTime * CoreConstants.DIRECTION_NUMBER)
+                break;
+            search = new DepthFirstSearch(root, level, deadline);
+            search.setEvaluator(evaluator);
+            search.setCancellationToken(cancellationToken);
+            Board nextStep = search.nextStep(steps);
+            nodeCount += search.getNodeCount();
+            if (search.isTimedOut())
+                break;
+            bestNextStep = nextStep;
+            finishedLevel = level;
+            lastLevelTime = System.nanoTime() - levelStartTime;
+        }
+        return bestNextStep;
+    }
+}
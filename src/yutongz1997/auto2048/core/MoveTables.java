@@ -0,0 +1,266 @@
+package yutongz1997.auto2048.core;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+
+
+/**
+ * The class of the precomputed move tables shared by all game engines. A line
+ * (a row or a column) of the board is encoded as a 16-bit integer, in which
+ * every tile takes 4 bits and stores the base-2 logarithm of its number (0 for
+ * an empty tile), the first tile being the lowest 4 bits. For each of the 65536
+ * possible lines, the tables hold the line after moving it towards its first
+ * or its last tile, the scores gained by doing so, and the same results spread
+ * over a column of a packed board. All the tables are built once when the
+ * class is loaded.
+ * <p>Since a tile has only 4 bits, the largest number that can be represented
+ * is 32768, and two tiles of 32768 are never combined.</p>
+ * @author Yutong Zhang
+ */
+public final class MoveTables {
+    // Make this class not instantiable by using a private constructor.
+    private MoveTables() {}
+
+    // The number of bits taken by a single tile.
+    static final int TILE_BITS = 4;
+    // The number of bits taken by a single line.
+    static final int LINE_BITS = TILE_BITS * CoreConstants.BOARD_DIMENSION;
+    // The masks of a single tile and a single line.
+    static final int TILE_MASK = 0xF;
+    static final int LINE_MASK = 0xFFFF;
+    // The largest exponent that a tile can hold.
+    static final int MAX_EXPONENT = CoreConstants.TILE_MAX_EXPONENT;
+    // The number of all possible lines.
+    public static final int LINE_NUMBER = LINE_MASK + 1;
+
+    // The results and scores of moving every possible row left or right.
+    private static final char[] rowLeftTable = new char[LINE_NUMBER];
+    private static final char[] rowRightTable = new char[LINE_NUMBER];
+    private static final int[] leftScoreTable = new int[LINE_NUMBER];
+    private static final int[] rightScoreTable = new int[LINE_NUMBER];
+    // The results of moving every possible column up or down, where the tiles
+    // are placed at the first column of a packed board.
+    private static final long[] columnUpTable = new long[LINE_NUMBER];
+    private static final long[] columnDownTable = new long[LINE_NUMBER];
+    static {
+        int[] tiles = new int[CoreConstants.BOARD_DIMENSION];
+        for (int line = 0; line < LINE_NUMBER; line++) {
+            unpackExponents(line, tiles);
+            leftScoreTable[line] = slide(tiles);
+            rowLeftTable[line] = (char) packExponents(tiles);
+            columnUpTable[line] = spreadToColumn(rowLeftTable[line]);
+
+            unpackExponents(line, tiles);
+            reverse(tiles);
+            rightScoreTable[line] = slide(tiles);
+            reverse(tiles);
+            rowRightTable[line] = (char) packExponents(tiles);
+            columnDownTable[line] = spreadToColumn(rowRightTable[line]);
+        }
+    }
+
+
+    /**
+     * Returns the line obtained by moving a row to the left.
+     * @param line the encoded row
+     * @return the encoded row after moving left
+     */
+    public static int moveRowLeft(int line) {
+        return rowLeftTable[line];
+    }
+
+
+    /**
+     * Returns the line obtained by moving a row to the right.
+     * @param line the encoded row
+     * @return the encoded row after moving right
+     */
+    public static int moveRowRight(int line) {
+        return rowRightTable[line];
+    }
+
+
+    /**
+     * Returns the tiles obtained by moving a column up. The column is encoded
+     * from top to bottom, and the result is placed at the first column of a
+     * packed board; shift it left by 4 times the column index to place it at
+     * another column.
+     * @param line the encoded column
+     * @return the moved column, spread over a packed board
+     */
+    public static long moveColumnUp(int line) {
+        return columnUpTable[line];
+    }
+
+
+    /**
+     * Returns the tiles obtained by moving a column down, placed in the same
+     * way as {@link #moveColumnUp(int)}.
+     * @param line the encoded column
+     * @return the moved column, spread over a packed board
+     */
+    public static long moveColumnDown(int line) {
+        return columnDownTable[line];
+    }
+
+
+    /**
+     * Returns the scores gained by moving a line towards its first tile (left
+     * for a row, up for a column).
+     * @param line the encoded line
+     * @return the scores gained
+     */
+    public static int getLeftScore(int line) {
+        return leftScoreTable[line];
+    }
+
+
+    /**
+     * Returns the scores gained by moving a line towards its last tile (right
+     * for a row, down for a column).
+     * @param line the encoded line
+     * @return the scores gained
+     */
+    public static int getRightScore(int line) {
+        return rightScoreTable[line];
+    }
+
+
+    /**
+     * Encodes the numbers of a line into a 16-bit integer.
+     * @param numbers the numbers of the line, from the first to the last tile
+     * @return the encoded line
+     * @throws IllegalArgumentException if a number is not a power of two or is
+     *         larger than 32768
+     */
+    public static int packLine(int[] numbers) {
+        int line = 0;
+        for (int index = 0; index < CoreConstants.BOARD_DIMENSION; index++)
+            line |= toExponent(numbers[index]) << (TILE_BITS * index);
+        return line;
+    }
+
+
+    /**
+     * Decodes a 16-bit line into the numbers of its tiles.
+     * @param line the encoded line
+     * @param numbers the array to store the numbers, from the first to the last
+     *                tile
+     */
+    public static void unpackLine(int line, int[] numbers) {
+        for (int index = 0; index < CoreConstants.BOARD_DIMENSION; index++)
+            numbers[index] = toNumber((line >>> (TILE_BITS * index)) & TILE_MASK);
+    }
+
+
+    /**
+     * Converts a number to its base-2 logarithm.
+     * @param number the number (0 for an empty tile)
+     * @return the exponent
+     * @throws IllegalArgumentException if the number is not a power of two or
+     *         is larger than 32768
+     */
+    public static int toExponent(int number) {
+        if (number == 0)
+            return 0;
+        int exponent = Integer.numberOfTrailingZeros(number);
+        if (number < 0 || Integer.bitCount(number) != 1 || exponent < 1 || exponent > MAX_EXPONENT)
+            throw new IllegalArgumentException("Tile " + number + " cannot be encoded in 4 bits");
+        return exponent;
+    }
+
+
+    /**
+     * Converts a base-2 logarithm back to a number.
+     * @param exponent the exponent (0 for an empty tile)
+     * @return the number
+     */
+    public static int toNumber(int exponent) {
+        return exponent == 0 ? 0 : 1 << exponent;
+    }
+
+
+    /**
+     * Combines and shifts the exponents of a line towards its first tile in
+     * place. The rules are the same as those of the original game: a tile
+     * combines with the next non-empty tile if they are identical, and a
+     * combined tile never combines again in the same move.
+     * @param tiles the exponents of the line
+     * @return the scores gained
+     */
+    private static int slide(int[] tiles) {
+        int scores = 0;
+        // First pass: combine as many tiles as possible.
+        for (int index = 0; index < tiles.length - 1; index++) {
+            if (tiles[index] == 0 || tiles[index] == MAX_EXPONENT)
+                continue;
+            int tempIndex = index + 1;
+            while (tempIndex < tiles.length && tiles[tempIndex] == 0)
+                tempIndex++;
+            if (tempIndex < tiles.length && tiles[tempIndex] == tiles[index]) {
+                tiles[index]++;
+                tiles[tempIndex] = 0;
+                scores += toNumber(tiles[index]);
+            }
+        }
+        // Second pass: shift all the tiles as close to the first one as possible.
+        int target = 0;
+        for (int index = 0; index < tiles.length; index++) {
+            if (tiles[index] != 0) {
+                int exponent = tiles[index];
+                tiles[index] = 0;
+                tiles[target++] = exponent;
+            }
+        }
+        return scores;
+    }
+
+
+    /**
+     * Places the tiles of a line at the first column of a packed board.
+     * @param line the encoded line
+     * @return the packed board containing the column
+     */
+    private static long spreadToColumn(int line) {
+        long column = 0;
+        for (int index = 0; index < CoreConstants.BOARD_DIMENSION; index++)
+            column |= (long) ((line >>> (TILE_BITS * index)) & TILE_MASK) << (LINE_BITS * index);
+        return column;
+    }
+
+
+    /**
+     * Splits a 16-bit line into the exponents of its tiles.
+     * @param line the encoded line
+     * @param tiles the array to store the exponents
+     */
+    private static void unpackExponents(int line, int[] tiles) {
+        for (int index = 0; index < tiles.length; index++)
+            tiles[index] = (line >>> (TILE_BITS * index)) & TILE_MASK;
+    }
+
+
+    /**
+     * Joins the exponents of the tiles into a 16-bit line.
+     * @param tiles the exponents of the tiles
+     * @return the encoded line
+     */
+    private static int packExponents(int[] tiles) {
+        int line = 0;
+        for (int index = 0; index < tiles.length; index++)
+            line |= tiles[index] << (TILE_BITS * index);
+        return line;
+    }
+
+
+    /**
+     * Reverses an array in place.
+     * @param tiles the array
+     */
+    private static void reverse(int[] tiles) {
+        for (int i = 0, j = tiles.length - 1; i < j; i++, j--) {
+            int temp = tiles[i];
+            tiles[i] = tiles[j];
+            tiles[j] = temp;
+        }
+    }
+}
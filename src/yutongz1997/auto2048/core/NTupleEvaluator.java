@@ -0,0 +1,250 @@
+package yutongz1997.auto2048.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+
+
+/**
+ * The class of the n-tuple network evaluation function. An n-tuple is a fixed
+ * group of cells, and the exponents in these cells of a board are read as the
+ * digits of an index into the lookup table of the tuple, whose entry is the
+ * weight of this particular combination of numbers. The evaluation of a board is
+ * the sum of the weights of every tuple under all 8 rotations and reflections
+ * of the board, so it is a few dozens of array reads over the packed board, and
+ * the symmetric boards always share the same evaluation.
+ * <p>The weights are learned offline and loaded from a binary file (big-endian,
+ * as written by {@link java.io.DataOutputStream}): the magic number
+ * {@link CoreConstants#N_TUPLE_FILE_MAGIC}, the number of tuples, and then for
+ * every tuple the number of its cells, the indices (4 * row + column) of the
+ * cells, and the 16<sup>n</sup> float weights of its lookup table.</p>
+ * <p>The weights may be trained by {@link #update(long, double)} while other
+ * threads evaluate or update boards. No lock is taken, so a concurrent update
+ * of the same entry may be lost, which temporal difference learning tolerates
+ * well; evaluations may see a mix of old and new weights.</p>
+ * @author Yutong Zhang
+ */
+public class NTupleEvaluator implements Evaluator {
+    // The number of rotations and reflections of a board.
+    private static final int SYMMETRY_NUMBER = 8;
+
+    // The cells of all tuples.
+    private int[][] tuples;
+    // The lookup tables of all tuples, indexed by the exponents in the cells.
+    private float[][] weights;
+    // The bit offsets in a packed board of the cells of every tuple under every
+    // symmetry, i.e. shifts[tuple][symmetry][cell].
+    private int[][][] shifts;
+
+
+    /**
+     * Constructs an n-tuple network evaluation function whose weights are all
+     * zero, e.g. to be trained from scratch.
+     * @param tuples the cells of all tuples, each cell given by its index
+     *               (4 * row + column)
+     */
+    public NTupleEvaluator(int[][] tuples) {
+        this(tuples, createTables(tuples));
+    }
+
+
+    /**
+     * Constructs an n-tuple network evaluation function.
+     * @param tuples the cells of all tuples, each cell given by its index
+     *               (4 * row + column)
+     * @param weights the lookup tables of all tuples, each of which has
+     *                16<sup>n</sup> entries for a tuple of n cells
+     */
+    public NTupleEvaluator(int[][] tuples, float[][] weights) {
+        if (tuples.length != weights.length)
+            throw new IllegalArgumentException("Every tuple must have its own lookup table");
+        this.tuples = new int[tuples.length][];
+        this.weights = weights;
+        shifts = new int[tuples.length][SYMMETRY_NUMBER][];
+        for (int i = 0; i < tuples.length; i++) {
+            int[] tuple = tuples[i];
+            if (tuple.length == 0 || tuple.length > CoreConstants.N_TUPLE_MAX_LENGTH)
+                throw new IllegalArgumentException("A tuple must have 1 to "
+                        + CoreConstants.N_TUPLE_MAX_LENGTH + " cells");
+            if (weights[i].length != getTableSize(tuple.length))
+                throw new IllegalArgumentException("The lookup table of tuple " + i
+                        + " must have " + getTableSize(tuple.length) + " entries");
+            this.tuples[i] = tuple.clone();
+            for (int symmetry = 0; symmetry < SYMMETRY_NUMBER; symmetry++) {
+                shifts[i][symmetry] = new int[tuple.length];
+                for (int j = 0; j < tuple.length; j++) {
+                    if (tuple[j] < 0
+                            || tuple[j] >= CoreConstants.BOARD_DIMENSION * CoreConstants.BOARD_DIMENSION)
+                        throw new IllegalArgumentException("Invalid cell index: " + tuple[j]);
+                    shifts[i][symmetry][j] = getSymmetricCell(tuple[j], symmetry) * MoveTables.TILE_BITS;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Loads an n-tuple network evaluation function from a binary weights file.
+     * @param fileName the name of the weights file
+     * @return the evaluation function
+     * @throws IOException if the file cannot be read or is not a weights file
+     */
+    public static NTupleEvaluator load(String fileName) throws IOException {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (input.readInt() != CoreConstants.N_TUPLE_FILE_MAGIC)
+                throw new IOException("Not an n-tuple weights file: " + fileName);
+            int tupleNumber = input.readInt();
+            if (tupleNumber <= 0)
+                throw new IOException("Invalid number of tuples: " + tupleNumber);
+            int[][] tuples = new int[tupleNumber][];
+            float[][] weights = new float[tupleNumber][];
+            for (int i = 0; i < tupleNumber; i++) {
+                int cellNumber = input.readInt();
+                if (cellNumber <= 0 || cellNumber > CoreConstants.N_TUPLE_MAX_LENGTH)
+                    throw new IOException("Invalid number of cells: " + cellNumber);
+                tuples[i] = new int[cellNumber];
+                for (int j = 0; j < cellNumber; j++)
+                    tuples[i][j] = input.readInt();
+                weights[i] = new float[getTableSize(cellNumber)];
+                for (int j = 0; j < weights[i].length; j++)
+                    weights[i][j] = input.readFloat();
+            }
+            return new NTupleEvaluator(tuples, weights);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid n-tuple weights file: " + fileName, e);
+        }
+    }
+
+
+    /**
+     * Saves the weights to a binary weights file, which can be loaded by
+     * {@link #load(String)}. The weights are first written to a temporary file
+     * which then replaces the given one, so an existing file is never left half
+     * written.
+     * @param fileName the name of the weights file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(String fileName) throws IOException {
+        File file = new File(fileName).getAbsoluteFile();
+        File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(CoreConstants.N_TUPLE_FILE_MAGIC);
+            output.writeInt(tuples.length);
+            for (int i = 0; i < tuples.length; i++) {
+                output.writeInt(tuples[i].length);
+                for (int cell : tuples[i])
+                    output.writeInt(cell);
+                for (float weight : weights[i])
+                    output.writeFloat(weight);
+            }
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * Returns the number of weights read by an evaluation, i.e. the number of
+     * tuples times the number of symmetries.
+     * @return the number of weights read by an evaluation
+     */
+    public int getLookupNumber() {
+        return tuples.length * SYMMETRY_NUMBER;
+    }
+
+
+    @Override
+    public double evaluate(long board) {
+        double value = 0;
+        for (int i = 0; i < shifts.length; i++) {
+            float[] table = weights[i];
+            for (int[] cellShifts : shifts[i]) {
+                int index = 0;
+                for (int shift : cellShifts)
+                    index = (index << MoveTables.TILE_BITS) | (int) ((board >>> shift) & MoveTables.TILE_MASK);
+                value += table[index];
+            }
+        }
+        return value;
+    }
+
+
+    /**
+     * Adds the given value to every weight read by the evaluation of a board, so
+     * that its evaluation grows by the value times {@link #getLookupNumber()}.
+     * @param board the packed board
+     * @param delta the value added to every weight
+     */
+    public void update(long board, double delta) {
+        float floatDelta = (float) delta;
+        for (int i = 0; i < shifts.length; i++) {
+            float[] table = weights[i];
+            for (int[] cellShifts : shifts[i]) {
+                int index = 0;
+                for (int shift : cellShifts)
+                    index = (index << MoveTables.TILE_BITS) | (int) ((board >>> shift) & MoveTables.TILE_MASK);
+                table[index] += floatDelta;
+            }
+        }
+    }
+
+
+    /**
+     * Creates empty lookup tables for the given tuples.
+     * @param tuples the cells of all tuples
+     * @return the lookup tables, all of whose weights are zero
+     */
+    private static float[][] createTables(int[][] tuples) {
+        float[][] weights = new float[tuples.length][];
+        for (int i = 0; i < tuples.length; i++) {
+            if (tuples[i].length == 0 || tuples[i].length > CoreConstants.N_TUPLE_MAX_LENGTH)
+                throw new IllegalArgumentException("A tuple must have 1 to "
+                        + CoreConstants.N_TUPLE_MAX_LENGTH + " cells");
+            weights[i] = new float[getTableSize(tuples[i].length)];
+        }
+        return weights;
+    }
+
+
+    /**
+     * Returns the number of entries of the lookup table of a tuple.
+     * @param cellNumber the number of cells of the tuple
+     * @return the number of entries, i.e. 16<sup>n</sup>
+     */
+    private static int getTableSize(int cellNumber) {
+        return 1 << (MoveTables.TILE_BITS * cellNumber);
+    }
+
+
+    /**
+     * Maps a cell to the cell it is moved to by one of the 8 rotations and
+     * reflections of the board.
+     * @param cell the index (4 * row + column) of the cell
+     * @param symmetry the index of the symmetry (0 - 7), the first 4 of which are
+     *                 the rotations and the others their reflections
+     * @return the index of the moved cell
+     */
+    private static int getSymmetricCell(int cell, int symmetry) {
+        int last = CoreConstants.BOARD_DIMENSION - 1;
+        int row = cell / CoreConstants.BOARD_DIMENSION;
+        int column = cell % CoreConstants.BOARD_DIMENSION;
+        for (int i = 0; i < symmetry % 4; i++) {
+            int rotatedRow = column;
+            column = last - row;
+            row = rotatedRow;
+        }
+        if (symmetry >= 4)
+            column = last - column;
+        return row * CoreConstants.BOARD_DIMENSION + column;
+    }
+}
@@ -0,0 +1,257 @@
+package yutongz1997.auto2048.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.Directions;
+
+
+/**
+ * The class of the parallel depth first search for the auto player. The work
+ * is split at the root across every valid direction, and the subtrees are split
+ * again recursively until the remaining levels are few enough to be searched
+ * by {@link DepthFirstSearch} on a single thread. The idle threads of the fork
+ * join pool steal the split subtrees from the busy ones. The results of the
+ * subtrees are merged in the order of the directions, so the next step is
+ * exactly the one {@link SearchTree#nextDirection(int)} would choose.
+ * <p>If the spawn source of the calling thread is a {@link RandomSpawnSource},
+ * every task spawns from its own source, split off the source of its parent
+ * task in the order of the directions, whichever thread runs it. A game
+ * played from a seeded source is therefore reproducible with this search too.
+ * </p>
+ * @author Yutong Zhang
+ */
+public class ParallelSearch {
+    // The board at the root of the search.
+    private Board root;
+    // The maximum level / depth of the search.
+    private int maximumLevel;
+    // The evaluation function of the boards (null for Board.evaluate(int)).
+    private Evaluator evaluator;
+    // The token cancelling the search (null if it cannot be cancelled).
+    private CancellationToken cancellationToken;
+    // The pool running all the tasks of the search.
+    private ForkJoinPool pool;
+    // The result of the last search.
+    private SubtreeResult lastResult;
+
+
+    /**
+     * Constructs a parallel search object based on the current game board.
+     * @param gameBoard the current game board
+     * @param maximumLevel the maximum level / depth of the search
+     * @param pool the pool running all the tasks of the search
+     */
+    public ParallelSearch(Board gameBoard, int maximumLevel, ForkJoinPool pool) {
+        root = gameBoard;
+        this.maximumLevel = maximumLevel;
+        this.pool = pool;
+    }
+
+
+    /**
+     * Sets the evaluation function of the boards compared by the search. Since
+     * the comparison starts from zero, the function should not give negative
+     * values to good boards.
+     * @param evaluator the evaluation function, or null to use
+     *                  {@link Board#evaluate(int)}
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+
+    /**
+     * Sets the token through which the search can be cancelled from another
+     * thread. Every task checks it before splitting its subtree, and the depth
+     * first searches of the small subtrees check it as they go.
+     * @param cancellationToken the token, or null if the search cannot be
+     *                          cancelled
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+
+    /**
+     * Searches all the boards reachable from the root in parallel, and returns
+     * the next step's game board leading to the one with the maximum evaluation.
+     * @param steps the total steps of the game up to now (which is used to compute
+     *              the evaluation value of a board)
+     * @return the next step's game board, or null if the root cannot move
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through its token
+     */
+    public Board nextStep(int steps) {
+        SpawnSource callerSource = Board.getSpawnSource();
+        RandomSpawnSource source = (callerSource instanceof RandomSpawnSource)
+                ? ((RandomSpawnSource) callerSource).split() : null;
+        lastResult = pool.invoke(new SearchTask(root, 0, null, steps, source));
+        return lastResult.nextStep;
+    }
+
+
+    /**
+     * Returns the number of boards generated below the root by the last search.
+     * @return the number of generated boards
+     */
+    public long getNodeCount() {
+        return (lastResult == null) ? 0 : lastResult.nodeCount;
+    }
+
+
+    /**
+     * Returns the level of the boards compared by the last search, i.e. the
+     * deepest level reached.
+     * @return the deepest level reached
+     */
+    public int getDepth() {
+        return (lastResult == null) ? 0 : lastResult.level;
+    }
+
+
+    /**
+     * The inner class containing the best result found in a subtree.
+     */
+    private static class SubtreeResult {
+        // The deepest level reached in the subtree.
+        private int level;
+        // The maximum evaluation (never less than zero) in the deepest level.
+        private double maxEvaluationValue;
+        // The board in the first level which the subtree comes from.
+        private Board nextStep;
+        // The number of boards generated in the subtree (including its root,
+        // unless it is the root of the whole search).
+        private long nodeCount;
+
+
+        /**
+         * Constructs a subtree result object.
+         * @param level the deepest level reached in the subtree
+         * @param maxEvaluationValue the maximum evaluation in the deepest level
+         * @param nextStep the board in the first level which the subtree comes from
+         * @param nodeCount the number of boards generated in the subtree
+         */
+        SubtreeResult(int level, double maxEvaluationValue, Board nextStep, long nodeCount) {
+            this.level = level;
+            this.maxEvaluationValue = maxEvaluationValue;
+            this.nextStep = nextStep;
+            this.nodeCount = nodeCount;
+        }
+
+
+        /**
+         * Determines whether this result should replace a result found before it
+         * (in the order of the directions). It does so only if it is deeper, or
+         * as deep but strictly better.
+         * @param previous the result found before, or null if there is none
+         * @return true if this result is better; false otherwise
+         */
+        boolean isBetterThan(SubtreeResult previous) {
+            return previous == null || level > previous.level
+                    || (level == previous.level && maxEvaluationValue > previous.maxEvaluationValue);
+        }
+    }
+
+
+    /**
+     * The inner class of the task searching the subtree below a board. A task
+     * is never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class SearchTask extends RecursiveTask<SubtreeResult> {
+        private Board gameBoard;
+        private int level;
+        private Board nextStep;
+        private int steps;
+        // The source the task spawns from (null for the one of its thread).
+        private RandomSpawnSource source;
+
+
+        /**
+         * Constructs a search task object.
+         * @param gameBoard the board at the root of the subtree
+         * @param level the level of the board
+         * @param nextStep the board in the first level which the board comes from
+         *                 (null for the root of the whole search)
+         * @param steps the total steps of the game up to now
+         * @param source the source the task spawns from, which must not be used
+         *               elsewhere (null for the one of the thread running it)
+         */
+        SearchTask(Board gameBoard, int level, Board nextStep, int steps, RandomSpawnSource source) {
+            this.gameBoard = gameBoard;
+            this.level = level;
+            this.nextStep = nextStep;
+            this.steps = steps;
+            this.source = source;
+        }
+
+
+        /**
+         * Searches the subtree from the source of the task, which is installed
+         * on the running thread meanwhile (a thread may run other tasks while
+         * it waits for the subtasks, so the previous source is put back after).
+         * @return the best result found in the subtree
+         */
+        @Override
+        protected SubtreeResult compute() {
+            if (source == null)
+                return search();
+            SpawnSource threadSource = Board.getSpawnSource();
+            Board.setSpawnSource(source);
+            try {
+                return search();
+            } finally {
+                Board.setSpawnSource(threadSource);
+            }
+        }
+
+
+        /**
+         * Searches the subtree, either directly or by splitting it into the
+         * subtrees of all valid directions.
+         * @return the best result found in the subtree
+         */
+        private SubtreeResult search() {
+            if (cancellationToken != null)
+                cancellationToken.throwIfCancelled();
+            // A small enough subtree is not worth splitting. It is searched by
+            // moving the board of this task in place, which no other task reads.
+            if (level > 0 && maximumLevel - level <= CoreConstants.PARALLEL_SEARCH_CUTOFF_LEVEL) {
+                DepthFirstSearch search = new DepthFirstSearch(gameBoard, maximumLevel);
+                search.setEvaluator(evaluator);
+                search.setCancellationToken(cancellationToken);
+                search.search(gameBoard, level, nextStep, steps);
+                return new SubtreeResult(search.getBestLevel(), search.getMaxEvaluationValue(), nextStep,
+                        search.getNodeCount());
+            }
+
+            List<SearchTask> subtasks = new ArrayList<>(CoreConstants.DIRECTION_NUMBER);
+            for (Directions direction : Directions.values()) {
+                Board movedBoard = gameBoard.move(direction);
+                if (movedBoard != null)
+                    subtasks.add(new SearchTask(movedBoard, level + 1,
+                            (level == 0) ? movedBoard : nextStep, steps, (source == null) ? null : source.split()));
+            }
+            // The board cannot move any more, so it is a leaf itself.
+            long nodeCount = (level == 0) ? 0 : 1;
+            if (subtasks.isEmpty())
+                return new SubtreeResult(level, (level == 0) ? 0
+                        : Math.max(gameBoard.evaluate(evaluator, steps), 0), nextStep, nodeCount);
+
+            invokeAll(subtasks);
+            SubtreeResult bestResult = null;
+            for (SearchTask subtask : subtasks) {
+                SubtreeResult result = subtask.join();
+                nodeCount += result.nodeCount;
+                if (result.isBetterThan(bestResult))
+                    bestResult = result;
+            }
+            return new SubtreeResult(bestResult.level, bestResult.maxEvaluationValue, bestResult.nextStep,
+                    nodeCount);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package yutongz1997.auto2048.core;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+
+
+/**
+ * The class of the default source of the new numbers: the empty tile is chosen
+ * uniformly, and the number is 4 with the probability
+ * {@link CoreConstants#NUMBER_4_POSSIBILITY}. It is backed by a
+ * {@link SplittableRandom}, which is fast and not shared by any other thread,
+ * and it can be seeded so that the same seed always gives the same numbers.
+ * <p>An object of this class is not thread-safe; use one object per thread.</p>
+ * @author Yutong Zhang
+ */
+public class RandomSpawnSource implements SpawnSource {
+    // The random generator.
+    private SplittableRandom random;
+
+
+    /**
+     * Constructs a random spawn source with an unpredictable seed.
+     */
+    public RandomSpawnSource() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+
+    /**
+     * Constructs a random spawn source with the given seed.
+     * @param seed the seed of the random generator
+     */
+    public RandomSpawnSource(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+
+    /**
+     * Constructs a random spawn source from a given random generator.
+     * @param random the random generator, which must not be used elsewhere
+     */
+    private RandomSpawnSource(SplittableRandom random) {
+        this.random = random;
+    }
+
+
+    /**
+     * Splits a new independent source off this one, e.g. for another thread.
+     * The new source only depends on the state of this one, so splitting is as
+     * reproducible as the numbers themselves.
+     * @return the new source
+     */
+    public RandomSpawnSource split() {
+        return new RandomSpawnSource(random.split());
+    }
+
+
+    @Override
+    public int nextEmptyTileIndex(int emptyTileNumber) {
+        return random.nextInt(emptyTileNumber);
+    }
+
+
+    @Override
+    public boolean nextIsNumber4() {
+        return random.nextDouble() < CoreConstants.NUMBER_4_POSSIBILITY;
+    }
+}
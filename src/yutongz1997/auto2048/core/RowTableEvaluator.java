@@ -0,0 +1,186 @@
+package yutongz1997.auto2048.core;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.HeuristicTerms;
+
+
+/**
+ * The class of the heuristic evaluation function based on precomputed lookup
+ * tables of rows and columns. Every heuristic term only depends on the tiles of
+ * a single row or column, so its contribution is computed once for all 65536
+ * possible lines, and a board is scored by summing the entries of its 4 rows
+ * and its 4 columns. The terms of a line are:
+ *     <p>(a) the base value of the line, which keeps the evaluation of a
+ *     playable board above zero;</p>
+ *     <p>(b) the number of every tile times the weight of its position (corner,
+ *     side or other, only counted in the rows);</p>
+ *     <p>(c) the number of empty tiles (only counted in the rows);</p>
+ *     <p>(d) the penalty of monotonicity, i.e. how far the line is from being
+ *     monotonic in either direction;</p>
+ *     <p>(e) the penalty of smoothness, i.e. the differences of the exponents of
+ *     neighbouring tiles;</p>
+ *     <p>(f) the number of merges available in the line.</p>
+ * Each of them is multiplied by its weight, which can be changed at any time
+ * (the tables are then rebuilt). Every term is symmetric, so all the rotations
+ * and reflections of a board share the same evaluation.
+ * <p>The weights must not be changed while a search is using the object.</p>
+ * @author Yutong Zhang
+ */
+public class RowTableEvaluator implements Evaluator {
+    // The offsets in the lookup table of the entries of the edge rows (the first
+    // and the last one), of the inner rows, and of the columns.
+    private static final int EDGE_ROW_OFFSET = 0;
+    private static final int INNER_ROW_OFFSET = MoveTables.LINE_NUMBER;
+    private static final int COLUMN_OFFSET = 2 * MoveTables.LINE_NUMBER;
+    // The power of the exponents in the penalty of monotonicity.
+    private static final int MONOTONICITY_POWER = 4;
+
+    // The weights of all heuristic terms.
+    private EnumMap<HeuristicTerms, Double> weights = new EnumMap<>(HeuristicTerms.class);
+    // The lookup table of all lines, i.e. the edge rows, the inner rows and the
+    // columns one after another.
+    private float[] lineValues;
+
+
+    /**
+     * Constructs a row table evaluation function with the default weights.
+     */
+    public RowTableEvaluator() {
+        for (HeuristicTerms term : HeuristicTerms.values())
+            weights.put(term, term.getDefaultWeight());
+        buildTables();
+    }
+
+
+    /**
+     * Returns the weight of a heuristic term.
+     * @param term the heuristic term
+     * @return the weight of the term
+     */
+    public double getWeight(HeuristicTerms term) {
+        return weights.get(term);
+    }
+
+
+    /**
+     * Changes the weight of a heuristic term, and rebuilds the lookup tables.
+     * @param term the heuristic term
+     * @param weight the new weight of the term
+     */
+    public void setWeight(HeuristicTerms term, double weight) {
+        weights.put(term, weight);
+        buildTables();
+    }
+
+
+    /**
+     * Changes the weights of several heuristic terms at once, and rebuilds the
+     * lookup tables only once.
+     * @param newWeights the new weights of the terms (the terms absent from it
+     *                   keep their weights)
+     */
+    public void setWeights(Map<HeuristicTerms, Double> newWeights) {
+        weights.putAll(newWeights);
+        buildTables();
+    }
+
+
+    @Override
+    public double evaluate(long board) {
+        float[] values = lineValues;
+        long transposedBoard = BitBoard.transpose(board);
+        int lineMask = MoveTables.LINE_MASK;
+        int lineBits = MoveTables.LINE_BITS;
+        return values[EDGE_ROW_OFFSET + (int) (board & lineMask)]
+                + values[INNER_ROW_OFFSET + (int) ((board >>> lineBits) & lineMask)]
+                + values[INNER_ROW_OFFSET + (int) ((board >>> (2 * lineBits)) & lineMask)]
+                + values[EDGE_ROW_OFFSET + (int) ((board >>> (3 * lineBits)) & lineMask)]
+                + values[COLUMN_OFFSET + (int) (transposedBoard & lineMask)]
+                + values[COLUMN_OFFSET + (int) ((transposedBoard >>> lineBits) & lineMask)]
+                + values[COLUMN_OFFSET + (int) ((transposedBoard >>> (2 * lineBits)) & lineMask)]
+                + values[COLUMN_OFFSET + (int) ((transposedBoard >>> (3 * lineBits)) & lineMask)];
+    }
+
+
+    /**
+     * Computes the values of all lines with the current weights, and replaces
+     * the lookup table with them.
+     */
+    private void buildTables() {
+        double corner = weights.get(HeuristicTerms.CORNER);
+        double side = weights.get(HeuristicTerms.SIDE);
+        double other = weights.get(HeuristicTerms.OTHER);
+        double[] edgeRowWeights = {corner, side, side, corner};
+        double[] innerRowWeights = {side, other, other, side};
+
+        float[] values = new float[3 * MoveTables.LINE_NUMBER];
+        int[] exponents = new int[CoreConstants.BOARD_DIMENSION];
+        for (int line = 0; line < MoveTables.LINE_NUMBER; line++) {
+            for (int i = 0; i < CoreConstants.BOARD_DIMENSION; i++)
+                exponents[i] = (line >>> (i * MoveTables.TILE_BITS)) & MoveTables.TILE_MASK;
+            double lineValue = getLineValue(exponents);
+            double emptyValue = 0;
+            double edgeRowPositionValue = 0;
+            double innerRowPositionValue = 0;
+            for (int i = 0; i < CoreConstants.BOARD_DIMENSION; i++) {
+                if (exponents[i] == 0) {
+                    emptyValue += weights.get(HeuristicTerms.EMPTY);
+                    continue;
+                }
+                int number = MoveTables.toNumber(exponents[i]);
+                edgeRowPositionValue += number * edgeRowWeights[i];
+                innerRowPositionValue += number * innerRowWeights[i];
+            }
+            values[EDGE_ROW_OFFSET + line] = (float) (lineValue + emptyValue + edgeRowPositionValue);
+            values[INNER_ROW_OFFSET + line] = (float) (lineValue + emptyValue + innerRowPositionValue);
+            values[COLUMN_OFFSET + line] = (float) lineValue;
+        }
+        lineValues = values;
+    }
+
+
+    /**
+     * Computes the value of the terms shared by the rows and the columns, i.e.
+     * the base value, monotonicity, smoothness and merges, of a line.
+     * @param exponents the exponents of the tiles in the line
+     * @return the value of the shared terms
+     */
+    private double getLineValue(int[] exponents) {
+        // Monotonicity is measured in both directions, and only the better one
+        // is penalized.
+        double increasingPenalty = 0;
+        double decreasingPenalty = 0;
+        for (int i = 1; i < exponents.length; i++) {
+            double previous = Math.pow(exponents[i - 1], MONOTONICITY_POWER);
+            double current = Math.pow(exponents[i], MONOTONICITY_POWER);
+            if (previous > current)
+                decreasingPenalty += previous - current;
+            else
+                increasingPenalty += current - previous;
+        }
+
+        // Smoothness and merges only look at the tiles next to each other once
+        // the empty tiles between them are slid away.
+        double smoothnessPenalty = 0;
+        int mergeNumber = 0;
+        int previousExponent = 0;
+        for (int exponent : exponents) {
+            if (exponent == 0)
+                continue;
+            if (previousExponent != 0) {
+                smoothnessPenalty += Math.abs(exponent - previousExponent);
+                if (exponent == previousExponent && exponent != MoveTables.MAX_EXPONENT)
+                    mergeNumber++;
+            }
+            previousExponent = exponent;
+        }
+
+        return weights.get(HeuristicTerms.BASE)
+                - Math.min(increasingPenalty, decreasingPenalty) * weights.get(HeuristicTerms.MONOTONICITY)
+                - smoothnessPenalty * weights.get(HeuristicTerms.SMOOTHNESS)
+                + mergeNumber * weights.get(HeuristicTerms.MERGE);
+    }
+}
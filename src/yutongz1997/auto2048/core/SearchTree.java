@@ -1,8 +1,6 @@
 package yutongz1997.auto2048.core;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Arrays;
 
 import yutongz1997.auto2048.lib.CoreConstants;
 import yutongz1997.auto2048.lib.CoreConstants.Directions;
@@ -10,13 +8,86 @@ import yutongz1997.auto2048.lib.CoreConstants.Directions;
 
 /**
  * The class of the underlying support for the auto player of this game.
+ * <p>The nodes of the tree are kept in an arena of parallel primitive arrays
+ * instead of one object per node: a node is an index, and its packed boards
+ * (see {@link BitBoard}), scores, parent, first child, depth and evaluation are
+ * stored at that index of the arrays. Every node below the root keeps the
+ * board just moved, before the new number is spawned (its afterstate), and the
+ * board with one number spawned by the search (its chance child), which the
+ * node is evaluated on and expanded from. The children of a node are stored next
+ * to each other, and the nodes are stored in the order of the breadth first
+ * traversal, so the tree is built, searched and reused by going through the
+ * arrays in order. The arena is sized from the given capacity, grows when a
+ * tree does not fit, and is kept from one decision to the next by
+ * {@link #advance(Board, int)} and {@link #reset(Board, int)}.</p>
+ * <p>The search only chooses the direction of the next step (see
+ * {@link #nextDirection(int)}), and the new number of the game is spawned by
+ * the game itself, so the spawns sampled by the search are never played. The
+ * subtree of the chosen direction is only reused if the game happens to spawn
+ * the same number as its chance child.</p>
+ * <p>The number of nodes can be capped (see {@link #setNodeLimit(int)}), which
+ * bounds the memory of the arena. Once a level cannot be completed within the
+ * limit, it is dropped and the search falls back to the deepest complete level
+ * above it.</p>
+ * <p>The build, the extension and the search of the tree can be cancelled from
+ * another thread (see {@link #setCancellationToken(CancellationToken)}). A
+ * cancelled tree is only good for being rebuilt by
+ * {@link #reset(Board, int)}.</p>
  * @author Yutong Zhang
  */
 public class SearchTree {
-    // The root node of the search tree.
-    private SearchTreeNode root;
-    // An array list used to store all nodes in the deepest level.
-    private ArrayList<SearchTreeNode> lastLevelNodes;
+    // The index of the root node.
+    private static final int ROOT = 0;
+    // The parent of the root node.
+    private static final int NO_PARENT = -1;
+    // The first child of a node whose children have not been created yet, and
+    // of a node which cannot move.
+    private static final int UNEXPANDED = -1;
+    private static final int NO_CHILDREN = -2;
+    // All the directions (Directions.values() copies the array every time).
+    private static final Directions[] DIRECTIONS = Directions.values();
+    // The cancellation token is checked once every (CANCELLATION_CHECK_MASK + 1)
+    // nodes expanded or evaluated.
+    private static final int CANCELLATION_CHECK_MASK = 0xFF;
+
+    // The arena of the nodes: the packed afterstates (the game board for the
+    // root), the packed chance children (the boards spawned by the search,
+    // the game board for the root), the scores, the parents, the first
+    // children, the depths, and the evaluations (only computed for the nodes
+    // in the deepest level) of all nodes.
+    private long[] tiles;
+    private long[] chanceTiles;
+    private int[] scores;
+    private int[] parents;
+    private int[] firstChildren;
+    private byte[] depths;
+    private double[] values;
+    // The new indices of the nodes kept by the last call of advance() (-1 for
+    // the dropped ones).
+    private int[] newIndices;
+    // The number of nodes in the arena.
+    private int size;
+    // The nodes in the deepest level, i.e. from lastLevelStart (inclusive) to
+    // lastLevelEnd (exclusive).
+    private int lastLevelStart;
+    private int lastLevelEnd;
+    // The board into which a node is unpacked to be evaluated by
+    // Board.evaluate(int).
+    private Board evaluationBoard =
+            new Board(new int[CoreConstants.BOARD_DIMENSION][CoreConstants.BOARD_DIMENSION], 0);
+    // The evaluation function of the boards (null for Board.evaluate(int)).
+    private Evaluator evaluator;
+    // The number of nodes created below the root (since the last reuse).
+    private long nodeCount;
+    // The node in the first level chosen by the last decision (-1 if none).
+    private int nextStepNode = -1;
+    // The maximum number of nodes in the arena, and whether the last build or
+    // extension of the tree has been cut short by it.
+    private int nodeLimit = Integer.MAX_VALUE;
+    private boolean nodeLimitReached;
+    // The token cancelling the build, the extension and the search of the tree
+    // (null if they cannot be cancelled).
+    private CancellationToken cancellationToken;
 
 
     /**
@@ -25,164 +96,344 @@ public class SearchTree {
      * @param maximumLevel the maximum level / depth of the search tree
      */
     public SearchTree(Board gameBoard, int maximumLevel) {
-        root = new SearchTreeNode(gameBoard);
-        lastLevelNodes = new ArrayList<>();
-        // Constructs the search tree imitating the procedure of the breadth
-        // first traversal (using a queue).
-        Queue<SearchTreeNode> queue = new LinkedList<>();
-        queue.offer(root);
-        while (!queue.isEmpty()) {
-            SearchTreeNode current = queue.peek();
-            if (current.depth < maximumLevel) {
-                queue.poll();
-                current.createChildren();
-                for (Directions direction : Directions.values()) {
-                    int directionIndex = direction.getDirectionIndex();
-                    if (current.children[directionIndex] != null)
-                        queue.offer(current.children[directionIndex]);
-                }
-            } else {
-                for (int count = 0; count < lastLevelNodes.size(); count++)
-                    lastLevelNodes.add(queue.poll());
-                queue.clear();
-            }
+        this(CoreConstants.SEARCH_TREE_INITIAL_CAPACITY);
+        reset(gameBoard, maximumLevel);
+    }
+
+
+    /**
+     * Constructs an empty search tree object, whose arena can hold the given
+     * number of nodes before it has to grow. A tree must be built by
+     * {@link #reset(Board, int)} before it is searched.
+     * @param capacity the number of nodes of the arena
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public SearchTree(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        tiles = new long[capacity];
+        chanceTiles = new long[capacity];
+        scores = new int[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        depths = new byte[capacity];
+        values = new double[capacity];
+        newIndices = new int[capacity];
+    }
+
+
+    /**
+     * Drops the whole tree and builds a new one based on the current game
+     * board in the same arena.
+     * @param gameBoard the current game board
+     * @param maximumLevel the maximum level / depth of the search tree
+     * @throws java.util.concurrent.CancellationException if the build has been
+     *         cancelled through the token
+     */
+    public void reset(Board gameBoard, int maximumLevel) {
+        size = 0;
+        nodeCount = 0;
+        nextStepNode = -1;
+        long board = BitBoard.pack(gameBoard.getBoard());
+        addNode(board, board, gameBoard.getScores(), NO_PARENT, 0);
+        expand(maximumLevel);
+    }
+
+
+    /**
+     * Reuses the search tree for the next decision: if the given board is the
+     * chance child of the node chosen by the last call of
+     * {@link #nextDirection(int)}, i.e. the next step has been played and the
+     * game has spawned the same number as the search, that node becomes the
+     * new root, the rest of the tree is dropped, and the subtree is extended
+     * down to the maximum level, so only about one new level has to be built.
+     * If the game has spawned another number, the subtree was searched for a
+     * board which has not been reached, and cannot be reused.
+     * @param gameBoard the current game board
+     * @param maximumLevel the maximum level / depth of the search tree
+     * @return true if the tree has been reused; false if the board does not
+     *         match, in which case the tree must be rebuilt by
+     *         {@link #reset(Board, int)}
+     * @throws java.util.concurrent.CancellationException if the extension has
+     *         been cancelled through the token
+     */
+    public boolean advance(Board gameBoard, int maximumLevel) {
+        if (nextStepNode < 0 || chanceTiles[nextStepNode] != BitBoard.pack(gameBoard.getBoard())
+                || scores[nextStepNode] != gameBoard.getScores())
+            return false;
+
+        // The nodes kept are the ones whose parents are kept. A parent is always
+        // stored before its children, so they are all found in one pass.
+        int keptNumber = 0;
+        for (int node = nextStepNode; node < size; node++) {
+            int parent = parents[node];
+            newIndices[node] = (node == nextStepNode || (parent >= nextStepNode && newIndices[parent] >= 0))
+                    ? keptNumber++ : -1;
         }
-        // This is the situation when the maximum possible height of the search
-        // tree is smaller than the given maximum level. It happens during the
-        // very last steps of the game.
-        if (lastLevelNodes.isEmpty())
-            collectLastLevelNodes(maximumLevel);
-    }
-
-
-    /**
-     * Recursively calculates the height of the search tree, i.e. the maximum
-     * length of a path from the root to a leaf node.
-     * @param root the root node
-     * @return the height of the search tree
-     */
-    private int getHeight(SearchTreeNode root) {
-        if (root == null || root.children == null)
-            return 0;
-        else {
-            boolean isLeaf = true;
-            for (Directions direction : Directions.values())
-                // If all of the children of a node are null, this node is a leaf.
-                if (root.children[direction.getDirectionIndex()] != null) {
-                    isLeaf = false;
-                    break;
-                }
-            if (!isLeaf) {
-                int height = 0;
-                for (Directions direction : Directions.values())
-                    height = Math.max(height,
-                            getHeight(root.children[direction.getDirectionIndex()]));
-                return 1 + height;
-            } else
-                return 0;
+        // They are moved to the front of the arena in the same order, which is
+        // still the one of the breadth first traversal, and one level up.
+        for (int node = nextStepNode; node < size; node++) {
+            int newIndex = newIndices[node];
+            if (newIndex < 0)
+                continue;
+            tiles[newIndex] = (node == nextStepNode) ? chanceTiles[node] : tiles[node];
+            chanceTiles[newIndex] = chanceTiles[node];
+            scores[newIndex] = scores[node];
+            parents[newIndex] = (node == nextStepNode) ? NO_PARENT : newIndices[parents[node]];
+            firstChildren[newIndex] = (firstChildren[node] < 0) ? firstChildren[node]
+                    : newIndices[firstChildren[node]];
+            depths[newIndex] = (byte) (depths[node] - 1);
         }
+        size = keptNumber;
+        nextStepNode = -1;
+        nodeCount = 0;
+        expand(maximumLevel);
+        return true;
     }
 
 
     /**
-     * Adds all the nodes from the calculated maximum possible level of the search
-     * tree (but not exceeds the given maximum level). Again this uses the idea of
-     * the breadth first traversal.
-     * @param maximumLevel the maximum level of nodes to be collected.
+     * Creates the children of all the nodes above the maximum level which have
+     * not been expanded yet, and then collects the nodes of the deepest level.
+     * The children are appended to the arena, so going through it in order is
+     * the breadth first traversal. If the node limit is reached, the level being
+     * built is dropped.
+     * <p>If the token is cancelled, the expansion stops between two nodes, and
+     * no decision can be made from the tree any more, so that
+     * {@link #advance(Board, int)} refuses to reuse it.</p>
+     * @param maximumLevel the maximum level / depth of the search tree
      */
-    private void collectLastLevelNodes(int maximumLevel) {
-        int level = Math.min(getHeight(root), maximumLevel);
-        Queue<SearchTreeNode> queue = new LinkedList<>();
-        queue.offer(root);
-        while (!queue.isEmpty()) {
-            SearchTreeNode current = queue.poll();
-            if (current.depth == level) {
-                lastLevelNodes.add(current);
-                continue;
+    private void expand(int maximumLevel) {
+        nodeLimitReached = false;
+        for (int node = ROOT; node < size; node++) {
+            if ((node & CANCELLATION_CHECK_MASK) == 0 && cancellationToken != null)
+                cancellationToken.throwIfCancelled();
+            if (depths[node] < maximumLevel && firstChildren[node] == UNEXPANDED && !createChildren(node)) {
+                nodeLimitReached = true;
+                dropLevel(depths[node] + 1);
+                break;
             }
-            for (Directions direction : Directions.values()) {
-                int directionIndex = direction.getDirectionIndex();
-                if (current.children[directionIndex] != null)
-                    queue.offer(current.children[directionIndex]);
+        }
+        // The maximum possible height of the search tree may be smaller than the
+        // given maximum level. It happens during the very last steps of the game.
+        collectLastLevelNodes(maximumLevel);
+    }
+
+
+    /**
+     * Drops all the nodes in the given level and below, which are at the end of
+     * the arena, so that the nodes in the level above become unexpanded again.
+     * @param level the first level to drop
+     */
+    private void dropLevel(int level) {
+        while (depths[size - 1] >= level)
+            size--;
+        for (int node = size - 1; node >= ROOT && depths[node] == level - 1; node--)
+            if (firstChildren[node] >= 0)
+                firstChildren[node] = UNEXPANDED;
+    }
+
+
+    /**
+     * Creates all of the children's nodes of a node at the end of the arena,
+     * unless they may not all fit within the node limit. The children are moved
+     * from the chance child of the node, and each of them samples its own
+     * chance child from the spawn source of the current thread.
+     * @param node the index of the node
+     * @return true if the children have been created; false if the node limit
+     *         has been reached, in which case nothing is changed
+     */
+    private boolean createChildren(int node) {
+        if (size > nodeLimit - CoreConstants.DIRECTION_NUMBER)
+            return false;
+        long board = chanceTiles[node];
+        firstChildren[node] = size;
+        for (Directions direction : DIRECTIONS) {
+            long movedBoard = BitBoard.move(board, direction);
+            // If the current board is not movable in a given direction, no
+            // child representing this direction will be built, which completes
+            // the pruning process during tree construction.
+            if (movedBoard != board) {
+                addNode(movedBoard, BitBoard.addNumber(movedBoard),
+                        scores[node] + BitBoard.getMoveScore(board, direction), node, depths[node] + 1);
+                nodeCount++;
             }
         }
+        if (firstChildren[node] == size)
+            firstChildren[node] = NO_CHILDREN;
+        return true;
+    }
+
+
+    /**
+     * Appends a node to the arena, which grows if it is full.
+     * @param board the packed afterstate of the node
+     * @param chanceBoard the packed chance child of the node
+     * @param nodeScores the scores of the node
+     * @param parent the index of the parent of the node
+     * @param depth the depth of the node
+     */
+    private void addNode(long board, long chanceBoard, int nodeScores, int parent, int depth) {
+        if (size == tiles.length) {
+            int capacity = (int) Math.min(2L * size, nodeLimit);
+            tiles = Arrays.copyOf(tiles, capacity);
+            chanceTiles = Arrays.copyOf(chanceTiles, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            values = Arrays.copyOf(values, capacity);
+            newIndices = Arrays.copyOf(newIndices, capacity);
+        }
+        tiles[size] = board;
+        chanceTiles[size] = chanceBoard;
+        scores[size] = nodeScores;
+        parents[size] = parent;
+        firstChildren[size] = UNEXPANDED;
+        depths[size] = (byte) depth;
+        size++;
     }
 
 
     /**
-     * A helper method that returns the next step's game board by backtracking
-     * the parents of a deepest level node level by level.
+     * Finds all the nodes from the calculated maximum possible level of the
+     * search tree (but not exceeds the given maximum level). Since the depths
+     * never decrease along the arena, they are next to each other, and the
+     * deepest node is the last one.
+     * @param maximumLevel the maximum level of nodes to be collected.
+     */
+    private void collectLastLevelNodes(int maximumLevel) {
+        int level = Math.min(depths[size - 1], maximumLevel);
+        lastLevelEnd = size;
+        while (depths[lastLevelEnd - 1] > level)
+            lastLevelEnd--;
+        lastLevelStart = lastLevelEnd;
+        while (lastLevelStart > ROOT && depths[lastLevelStart - 1] == level)
+            lastLevelStart--;
+    }
+
+
+    /**
+     * A helper method that returns the direction of the next step by
+     * backtracking the parents of a deepest level node level by level. The
+     * children of the root are stored in the order of the directions which
+     * can move its board, so the direction is found from the index of the
+     * first level node.
      * @param lastLevelNode a node in the deepest level of the search tree
-     * @return the next step's game board
+     * @return the direction of the next step
      */
-    private Board nextStep(SearchTreeNode lastLevelNode) {
-        SearchTreeNode nextStepNode = lastLevelNode;
-        while (nextStepNode.depth != 1)
-            nextStepNode = nextStepNode.parent;
-        return nextStepNode.gameBoard;
+    private Directions backtrack(int lastLevelNode) {
+        int nextStepNode = lastLevelNode;
+        while (depths[nextStepNode] != 1)
+            nextStepNode = parents[nextStepNode];
+        this.nextStepNode = nextStepNode;
+        long board = chanceTiles[ROOT];
+        int child = firstChildren[ROOT];
+        for (Directions direction : DIRECTIONS)
+            if (BitBoard.move(board, direction) != board && child++ == nextStepNode)
+                return direction;
+        throw new IllegalStateException("Not a child of the root: " + nextStepNode);
     }
 
 
     /**
-     * Iterates through the array list of last level nodes, finds the one with the
-     * maximum evaluation and returns the next step's game board using the helper
-     * method above.
-     * @param steps the total steps of the game up to now (which is used to compute
-     *              the evaluation value of a board)
-     * @return the next step's game board
+     * Returns the number of nodes created below the root while building the
+     * search tree, or while extending it by the last call of
+     * {@link #advance(Board, int)}.
+     * @return the number of created nodes
      */
-    public Board nextStep(int steps) {
-        double maxEvaluationValue = 0;
-        int indexMax = 0;
+    public long getNodeCount() {
+        return nodeCount;
+    }
 
-        for (int index = 0; index < lastLevelNodes.size(); index++) {
-            double evaluationValue = lastLevelNodes.get(index).gameBoard.evaluate(steps);
-            if (evaluationValue > maxEvaluationValue) {
-                maxEvaluationValue = evaluationValue;
-                indexMax = index;
-            }
-        }
-        return nextStep(lastLevelNodes.get(indexMax));
+
+    /**
+     * Returns the depth of the nodes compared by {@link #nextDirection(int)}, i.e. the
+     * deepest level reached.
+     * @return the deepest level reached
+     */
+    public int getDepth() {
+        return depths[lastLevelStart];
     }
 
 
     /**
-     * The inner class containing the structure of a node of the search tree.
+     * Limits the number of nodes of the search tree from the next build or
+     * extension on, so that its arena never grows beyond
+     * {@link CoreConstants#SEARCH_TREE_NODE_BYTES} bytes per node.
+     * @param nodeLimit the maximum number of nodes
+     * @throws IllegalArgumentException if the limit cannot even hold the root
+     *         and its children
      */
-    private class SearchTreeNode {
-        private SearchTreeNode parent;
-        private SearchTreeNode[] children;
-        private int depth;
-        private Board gameBoard;
+    public void setNodeLimit(int nodeLimit) {
+        if (nodeLimit <= CoreConstants.DIRECTION_NUMBER)
+            throw new IllegalArgumentException("Invalid node limit: " + nodeLimit);
+        this.nodeLimit = nodeLimit;
+    }
 
 
-        /**
-         * Construct a search tree node object.
-         * @param gameBoard the current game board
-         */
-        SearchTreeNode(Board gameBoard) {
-            depth = 0;
-            this.gameBoard = gameBoard;
-        }
+    /**
+     * Determines whether the last build or extension of the search tree has
+     * been cut short by the node limit, in which case the deepest level is
+     * shallower than the maximum one.
+     * @return true if the node limit has been reached; false otherwise
+     */
+    public boolean isNodeLimitReached() {
+        return nodeLimitReached;
+    }
+
+
+    /**
+     * Sets the evaluation function of the boards compared by the search. Since
+     * the comparison starts from zero, the function should not give negative
+     * values to good boards.
+     * @param evaluator the evaluation function, or null to use
+     *                  {@link Board#evaluate(int)}
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+
+    /**
+     * Sets the token through which the build, the extension and the search of
+     * the tree can be cancelled from another thread.
+     * @param cancellationToken the token, or null if they cannot be cancelled
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
 
 
-        /**
-         * Creates all of the children's nodes of the current node.
-         */
-        void createChildren() {
-            children = new SearchTreeNode[CoreConstants.DIRECTION_NUMBER];
-            for (Directions direction : Directions.values()) {
-                Board movedBoard = gameBoard.move(direction);
-                // If the current board is not movable in a given direction, no
-                // child representing this direction will be built, which completes
-                // the pruning process during tree construction.
-                if (movedBoard != null) {
-                    int directionIndex = direction.getDirectionIndex();
-                    children[directionIndex] = new SearchTreeNode(movedBoard);
-                    children[directionIndex].parent = this;
-                    children[directionIndex].depth = depth + 1;
-                }
+    /**
+     * Iterates through the nodes of the deepest level, finds the one whose
+     * chance child has the maximum evaluation and returns the direction of the
+     * next step using the helper method above. The game board is then moved in
+     * that direction by the game, which spawns its own new number.
+     * @param steps the total steps of the game up to now (which is used to compute
+     *              the evaluation value of a board)
+     * @return the direction of the next step, or null if the root cannot move
+     * @throws java.util.concurrent.CancellationException if the search has been
+     *         cancelled through the token
+     */
+    public Directions nextDirection(int steps) {
+        double maxEvaluationValue = 0;
+        int nodeMax = lastLevelStart;
+
+        for (int node = lastLevelStart; node < lastLevelEnd; node++) {
+            if ((node & CANCELLATION_CHECK_MASK) == 0 && cancellationToken != null)
+                cancellationToken.throwIfCancelled();
+            if (evaluator != null)
+                values[node] = evaluator.evaluate(chanceTiles[node]);
+            else {
+                evaluationBoard.replaceBoardWith(chanceTiles[node], scores[node]);
+                values[node] = evaluationBoard.evaluate(steps);
+            }
+            if (values[node] > maxEvaluationValue) {
+                maxEvaluationValue = values[node];
+                nodeMax = node;
             }
         }
+        return (nodeMax == ROOT) ? null : backtrack(nodeMax);
     }
 }
@@ -0,0 +1,27 @@
+package yutongz1997.auto2048.core;
+
+
+/**
+ * The interface of the sources of the new numbers spawned on the boards after
+ * every valid move. Every board spawns from the source of the current thread
+ * (see {@link Board#setSpawnSource(SpawnSource)}), so a source never needs to
+ * be thread-safe, and a game played on a single thread from a seeded source
+ * can be replayed exactly.
+ * @author Yutong Zhang
+ */
+public interface SpawnSource {
+    /**
+     * Chooses the empty tile receiving the new number.
+     * @param emptyTileNumber the number of empty tiles (at least 1)
+     * @return the index of the chosen empty tile, counting from the top-left one
+     *         in row-major order (0 to emptyTileNumber - 1)
+     */
+    int nextEmptyTileIndex(int emptyTileNumber);
+
+
+    /**
+     * Chooses whether the new number is 4 rather than 2.
+     * @return true if the new number is 4; false if it is 2
+     */
+    boolean nextIsNumber4();
+}
@@ -0,0 +1,199 @@
+package yutongz1997.auto2048.core;
+
+import java.util.Arrays;
+
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.ReplacementPolicies;
+
+
+/**
+ * The class of a fixed-size transposition table, which remembers the values of
+ * the boards already searched, so that a board reached again through another
+ * sequence of moves, or one of its rotations or reflections, is not searched
+ * from scratch. Boards are keyed by their canonical forms (see
+ * {@link BitBoard#getCanonical(long)}), so the evaluation function used by the
+ * search must give the same value to all 8 symmetric boards.
+ * <p>Every value is stored with the cumulative possibility of reaching the board
+ * when it was searched. A search which cuts off the unlikely branches cuts off
+ * more of them below a less likely board, so a value is only reused for a board
+ * reached at most as likely, i.e. searched with at least as many cutoffs.</p>
+ * <p>An object of this class is not thread-safe; use one object per thread.</p>
+ * @author Yutong Zhang
+ */
+public class TranspositionTable {
+    // The marker of an empty slot in the array of depths.
+    private static final byte EMPTY_SLOT = -1;
+
+    // The canonical boards, the searched depths, the cumulative possibilities
+    // of reaching the boards, and the values of all slots.
+    private long[] keys;
+    private byte[] depths;
+    private float[] probabilities;
+    private double[] values;
+    // The mask used to map a hash code to the index of a slot.
+    private int indexMask;
+    // The replacement policy used when two boards share the same slot.
+    private ReplacementPolicies replacementPolicy;
+    // The counters of the lookups.
+    private long hitCount;
+    private long missCount;
+
+
+    /**
+     * Constructs a transposition table with the default capacity, which prefers
+     * the entries searched deeper.
+     */
+    public TranspositionTable() {
+        this(CoreConstants.TRANSPOSITION_TABLE_DEFAULT_CAPACITY,
+                ReplacementPolicies.DEPTH_PREFERRED);
+    }
+
+
+    /**
+     * Constructs a transposition table.
+     * @param capacity the number of entries, which is rounded up to a power of two
+     * @param replacementPolicy the replacement policy used when two boards share
+     *                          the same slot
+     */
+    public TranspositionTable(int capacity, ReplacementPolicies replacementPolicy) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        keys = new long[size];
+        depths = new byte[size];
+        probabilities = new float[size];
+        values = new double[size];
+        indexMask = size - 1;
+        this.replacementPolicy = replacementPolicy;
+        clear();
+    }
+
+
+    /**
+     * Looks up the value of a board searched at least as deep as the given
+     * depth, and reached at least as likely as the given possibility.
+     * @param canonicalBoard the canonical form of the packed board
+     * @param depth the depth to search the board
+     * @param probability the cumulative possibility of reaching the board
+     * @return the value of the board, or NaN if there is no such entry
+     */
+    public double probe(long canonicalBoard, int depth, double probability) {
+        int index = getIndex(canonicalBoard);
+        if (depths[index] != EMPTY_SLOT && keys[index] == canonicalBoard && depths[index] >= depth
+                && probabilities[index] >= (float) probability) {
+            hitCount++;
+            return values[index];
+        }
+        missCount++;
+        return Double.NaN;
+    }
+
+
+    /**
+     * Stores the value of a searched board, following the replacement policy if
+     * the slot is occupied by another board.
+     * @param canonicalBoard the canonical form of the packed board
+     * @param depth the depth the board has been searched
+     * @param probability the cumulative possibility of reaching the board when
+     *                    it has been searched
+     * @param value the value of the board
+     */
+    public void store(long canonicalBoard, int depth, double probability, double value) {
+        int index = getIndex(canonicalBoard);
+        if (replacementPolicy == ReplacementPolicies.DEPTH_PREFERRED
+                && depths[index] != EMPTY_SLOT && depths[index] > depth)
+            return;
+        keys[index] = canonicalBoard;
+        depths[index] = (byte) Math.min(depth, Byte.MAX_VALUE);
+        probabilities[index] = (float) probability;
+        values[index] = value;
+    }
+
+
+    /**
+     * Removes all the entries from the table and resets the counters.
+     */
+    public void clear() {
+        Arrays.fill(depths, EMPTY_SLOT);
+        resetCounters();
+    }
+
+
+    /**
+     * Resets the counters of the lookups.
+     */
+    public void resetCounters() {
+        hitCount = 0;
+        missCount = 0;
+    }
+
+
+    /**
+     * Returns the number of entries of the table.
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+
+    /**
+     * Returns the replacement policy of the table.
+     * @return the replacement policy
+     */
+    public ReplacementPolicies getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+
+    /**
+     * Changes the replacement policy of the table, which applies to the entries
+     * stored from now on.
+     * @param replacementPolicy the replacement policy used when two boards share
+     *                          the same slot
+     */
+    public void setReplacementPolicy(ReplacementPolicies replacementPolicy) {
+        this.replacementPolicy = replacementPolicy;
+    }
+
+
+    /**
+     * Returns the number of lookups which find a value.
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+
+    /**
+     * Returns the number of lookups which do not find a value.
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+
+    /**
+     * Returns the ratio of hits to all lookups.
+     * @return the hit rate, or 0 if there is no lookup yet
+     */
+    public double getHitRate() {
+        long lookupCount = hitCount + missCount;
+        return (lookupCount == 0) ? 0 : (double) hitCount / lookupCount;
+    }
+
+
+    /**
+     * Maps a canonical board to the index of its slot.
+     * @param canonicalBoard the canonical form of the packed board
+     * @return the index of the slot
+     */
+    private int getIndex(long canonicalBoard) {
+        long hash = canonicalBoard * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & indexMask;
+    }
+}
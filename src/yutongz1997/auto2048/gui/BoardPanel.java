@@ -0,0 +1,161 @@
+package yutongz1997.auto2048.gui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import javax.swing.JComponent;
+
+import yutongz1997.auto2048.core.BoardSnapshot;
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.GameFrameConstants;
+import yutongz1997.auto2048.lib.GeneralGUIConstants;
+import yutongz1997.auto2048.lib.Utility;
+
+
+/**
+ * The class of the custom-painted component showing all the tiles of a board.
+ * Every kind of tile (blank, 2, 4, ..., up to the largest supported number) is
+ * rendered once into an image, indexed by the exponent of its number, and the
+ * board is painted by copying these images. When a new board is shown, only
+ * the tiles which have changed are repainted.
+ * <p>Like any Swing component, it must only be used on the event dispatch
+ * thread. A panel is never serialized.</p>
+ * @author Yutong Zhang
+ */
+@SuppressWarnings("serial")
+class BoardPanel extends JComponent {
+    // The exponents of the numbers of all tiles being shown (0 for blank).
+    private int[][] exponents;
+    // The pre-rendered images of all kinds of tiles, indexed by the exponents
+    // of their numbers (created when the component is first painted).
+    private BufferedImage[] tileImages;
+
+
+    /**
+     * Constructs a board panel showing a blank board.
+     */
+    BoardPanel() {
+        exponents = new int[CoreConstants.BOARD_DIMENSION][CoreConstants.BOARD_DIMENSION];
+        setPreferredSize(new Dimension(
+                GameFrameConstants.TILES_X_MULTIPLIER * (CoreConstants.BOARD_DIMENSION - 1)
+                        + GameFrameConstants.TILE_WIDTH,
+                GameFrameConstants.TILES_Y_MULTIPLIER * (CoreConstants.BOARD_DIMENSION - 1)
+                        + GameFrameConstants.TILE_HEIGHT));
+        setOpaque(false);
+    }
+
+
+    /**
+     * Shows the numbers of a board, and repaints the tiles which have changed.
+     * @param board the snapshot of the board
+     */
+    void setBoard(BoardSnapshot board) {
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
+                int exponent = toExponent(board.getNumber(row, column));
+                if (exponent != exponents[row][column]) {
+                    exponents[row][column] = exponent;
+                    repaint(getTileBounds(row, column));
+                }
+            }
+        }
+    }
+
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (tileImages == null)
+            tileImages = createTileImages(getGraphicsConfiguration());
+        Rectangle clip = g.getClipBounds();
+        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
+            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
+                Rectangle bounds = getTileBounds(row, column);
+                if (clip == null || clip.intersects(bounds))
+                    g.drawImage(tileImages[exponents[row][column]], bounds.x, bounds.y, null);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the bounds of a tile in this component.
+     * @param row the row index of the tile
+     * @param column the column index of the tile
+     * @return the bounds of the tile
+     */
+    private static Rectangle getTileBounds(int row, int column) {
+        return new Rectangle(GameFrameConstants.TILES_X_MULTIPLIER * column,
+                GameFrameConstants.TILES_Y_MULTIPLIER * row,
+                GameFrameConstants.TILE_WIDTH, GameFrameConstants.TILE_HEIGHT);
+    }
+
+
+    /**
+     * Converts the number of a tile to its exponent, clamped to the largest
+     * supported one.
+     * @param number the number of the tile (0 for blank)
+     * @return the exponent of the number (0 for blank)
+     */
+    private static int toExponent(int number) {
+        if (number == 0)
+            return 0;
+        return Math.min(Integer.numberOfTrailingZeros(number), CoreConstants.TILE_MAX_EXPONENT);
+    }
+
+
+    /**
+     * Renders the images of all kinds of tiles in the same way as the labels of
+     * the tiles used to be drawn: the color of the number as the background, a
+     * gray border, and the number centered in dark gray.
+     * @param configuration the graphics configuration of the screen, or null
+     *                      if the component is not displayed yet
+     * @return the images of all kinds of tiles, indexed by their exponents
+     */
+    private static BufferedImage[] createTileImages(GraphicsConfiguration configuration) {
+        int width = GameFrameConstants.TILE_WIDTH;
+        int height = GameFrameConstants.TILE_HEIGHT;
+        BufferedImage[] images = new BufferedImage[CoreConstants.TILE_MAX_EXPONENT + 1];
+        Color lastColor = GeneralGUIConstants.COLORS.get("");
+        for (int exponent = 0; exponent < images.length; exponent++) {
+            int number = (exponent == 0) ? 0 : 1 << exponent;
+            String tile = Utility.tileToString(number);
+            // The numbers without a color of their own share the last one.
+            Color color = GeneralGUIConstants.COLORS.getOrDefault(tile, lastColor);
+            lastColor = color;
+
+            BufferedImage image = (configuration == null)
+                    ? new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+                    : configuration.createCompatibleImage(width, height);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(color);
+            g.fillRect(0, 0, width, height);
+            GeneralGUIConstants.BORDER_TILES.paintBorder(null, g, 0, 0, width, height);
+            if (number != 0) {
+                Font font = (number >= GameFrameConstants.NUMBER_CHANGE_FONT)
+                        ? GeneralGUIConstants.FONT_TILE_BIG : GeneralGUIConstants.FONT_TILE_REGULAR;
+                // Shrink the font of the numbers too wide for the tile.
+                FontMetrics metrics = g.getFontMetrics(font);
+                int maximumTextWidth = width - 2 * GameFrameConstants.TILE_TEXT_MARGIN;
+                if (metrics.stringWidth(tile) > maximumTextWidth) {
+                    font = font.deriveFont(font.getSize2D() * maximumTextWidth / metrics.stringWidth(tile));
+                    metrics = g.getFontMetrics(font);
+                }
+                g.setFont(font);
+                g.setColor(Color.darkGray);
+                g.drawString(tile, (width - metrics.stringWidth(tile)) / 2,
+                        (height - metrics.getHeight()) / 2 + metrics.getAscent());
+            }
+            g.dispose();
+            images[exponent] = image;
+        }
+        return images;
+    }
+}
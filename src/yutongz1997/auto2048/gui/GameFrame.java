@@ -1,11 +1,20 @@
 package yutongz1997.auto2048.gui;
 
+import java.io.IOException;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.KeyStroke;
-import javax.swing.SwingConstants;
 import javax.swing.WindowConstants;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -21,10 +30,19 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.WindowListener;
 import java.awt.event.WindowEvent;
+import javax.management.JMException;
 
+import yutongz1997.auto2048.core.AdaptiveDepthPolicy;
+import yutongz1997.auto2048.core.AutoPlayer;
 import yutongz1997.auto2048.core.Board;
+import yutongz1997.auto2048.core.BoardSnapshot;
+import yutongz1997.auto2048.core.CancellationToken;
+import yutongz1997.auto2048.core.DepthPolicy;
+import yutongz1997.auto2048.core.Evaluator;
 import yutongz1997.auto2048.lib.*;
-import yutongz1997.auto2048.core.SearchTree;
+import yutongz1997.auto2048.lib.CoreConstants.EvaluationModes;
+import yutongz1997.auto2048.metrics.MetricsServer;
+import yutongz1997.auto2048.metrics.SearchMetrics;
 
 
 /**
@@ -36,7 +54,7 @@ public class GameFrame extends JFrame implements Observer {
     private JMenuBar menuBar;
     private JLabel fieldBestScores;
     private JTextField fieldScores;
-    private JLabel[][] tiles;
+    private BoardPanel boardView;
     private JMenuItem itemNewGame;
     private JMenuItem subItemAutoPlayStart;
     private JMenuItem subItemAutoPlayPause;
@@ -47,8 +65,38 @@ public class GameFrame extends JFrame implements Observer {
     private Configurations config;
     // The steps taken up to now.
     private int steps;
-    // The current status of the auto player (true for on, false for off).
-    private boolean autoPlayStatus;
+    // The current status of the auto player (true for on, false for off),
+    // which is read by the auto play thread.
+    private volatile boolean autoPlayStatus;
+    // The single thread running the auto play, the task of the latest run (null
+    // if it has never been started), and the token stopping it. A run started
+    // while a stopped one is still finishing waits for it in the queue.
+    private final ExecutorService autoPlayExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, GameFrameConstants.AUTO_PLAY_THREAD_NAME);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> autoPlayTask;
+    private CancellationToken autoPlayToken;
+    // The lock held while the token of the auto play is cancelled, and while
+    // the auto play thread checks its token and plays a move, so that no move
+    // is ever played once the auto play has been stopped.
+    private final Object autoPlayLock = new Object();
+    // The evaluation function of the auto player (null for the built-in
+    // evaluation of the boards).
+    private Evaluator evaluator;
+    // The evaluation mode and the weights file the evaluation function has
+    // been prepared for.
+    private EvaluationModes evaluatorMode;
+    private String evaluatorWeightsFile;
+    // The metrics of the searches of the auto player, and the local server
+    // publishing them (null if they are not served).
+    private SearchMetrics metrics;
+    private MetricsServer metricsServer;
+    // The latest frame published to the event dispatch thread but not rendered
+    // yet (null if there is none), and the timer rendering it at a capped rate.
+    private final AtomicReference<Frame> pendingFrame = new AtomicReference<>();
+    private Timer frameTimer;
 
 
     /**
@@ -73,11 +121,20 @@ public class GameFrame extends JFrame implements Observer {
         config.addObserver(this);
         steps = 0;
         autoPlayStatus = false;
+        metrics = new SearchMetrics();
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        serveMetrics(config.getMetricsPort());
 
         menuBar = new JMenuBar();
         buildGameMenu();
         buildHelpMenu();
         initializeGame();
+        frameTimer = new Timer(GameFrameConstants.FRAME_INTERVAL, (ActionEvent event) -> renderFrame());
+        frameTimer.start();
     }
 
 
@@ -107,7 +164,7 @@ public class GameFrame extends JFrame implements Observer {
         subItemAutoPlayPause.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, KeyEvent.CTRL_MASK));
         subItemAutoPlayPause.setEnabled(false);
         subItemAutoPlayStart.addActionListener((ActionEvent event) -> autoPlay());
-        subItemAutoPlayPause.addActionListener((ActionEvent event) -> changeAutoPlayStatus());
+        subItemAutoPlayPause.addActionListener((ActionEvent event) -> stopAutoPlay());
         // Submenu "Auto Play".
         final JMenu subMenuAutoPlay = new JMenu(GameFrameConstants.MENU_ITEM_AUTO_SOLVE);
         subMenuAutoPlay.add(subItemAutoPlayStart);
@@ -121,6 +178,9 @@ public class GameFrame extends JFrame implements Observer {
         itemSettings.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S,
                 KeyEvent.CTRL_MASK | KeyEvent.ALT_MASK));
         itemSettings.addActionListener((ActionEvent event) -> {
+            // The running auto play keeps the settings it has started with, so
+            // it is stopped and has to be started again with the new ones.
+            stopAutoPlay();
             SettingsDialog settingsDialog = new SettingsDialog(config);
             settingsDialog.setVisible(true);
         });
@@ -204,28 +264,10 @@ public class GameFrame extends JFrame implements Observer {
         getContentPane().add(panelBoard);
         panelBoard.setLayout(null);
 
-        tiles = new JLabel[CoreConstants.BOARD_DIMENSION][CoreConstants.BOARD_DIMENSION];
-        int[][] board = gameBoard.getBoard();
-        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
-            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
-                tiles[row][column] = new JLabel();
-                if (board[row][column] >= GameFrameConstants.NUMBER_CHANGE_FONT)
-                    tiles[row][column].setFont(GeneralGUIConstants.FONT_TILE_BIG);
-                else
-                    tiles[row][column].setFont(GeneralGUIConstants.FONT_TILE_REGULAR);
-                tiles[row][column].setHorizontalAlignment(SwingConstants.CENTER);
-                String tile = Utility.tileToString(board[row][column]);
-                tiles[row][column].setText(tile);
-                tiles[row][column].setBounds(GameFrameConstants.TILES_X_MULTIPLIER * column,
-                        GameFrameConstants.TILES_Y_MULTIPLIER * row,
-                        GameFrameConstants.TILE_WIDTH, GameFrameConstants.TILE_HEIGHT);
-                tiles[row][column].setForeground(Color.darkGray);
-                tiles[row][column].setBackground(GeneralGUIConstants.COLORS.get(tile));
-                tiles[row][column].setOpaque(true);
-                tiles[row][column].setBorder(GeneralGUIConstants.BORDER_TILES);
-                panelBoard.add(tiles[row][column]);
-            }
-        }
+        boardView = new BoardPanel();
+        boardView.setBounds(0, 0, boardView.getPreferredSize().width, boardView.getPreferredSize().height);
+        boardView.setBoard(gameBoard.snapshot());
+        panelBoard.add(boardView);
 
         final JLabel labelTips = new JLabel(GameFrameConstants.LABEL_TIP_MESSAGE);
         labelTips.setFont(GeneralGUIConstants.FONT_DEFAULT);
@@ -262,11 +304,24 @@ public class GameFrame extends JFrame implements Observer {
 
 
     /**
-     * Creates a new game and resets some status to default.
+     * Creates a new game and resets some status to default. The auto play is
+     * stopped first, and the board is only replaced once it has finished; if it
+     * does not finish in time, the current game is kept and the player is told
+     * to try again.
      */
     private void newGame() {
+        stopAutoPlay();
+        if (!awaitAutoPlay()) {
+            JOptionPane.showMessageDialog(null,
+                    GameFrameConstants.MESSAGE_NEW_GAME_WHILE_STOPPING_DIALOG,
+                    GameFrameConstants.CAPTION_NEW_GAME_WHILE_STOPPING_DIALOG,
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         gameBoard = new Board();
-        updateTiles(gameBoard);
+        // A frame of the previous game must not be rendered after the new board.
+        pendingFrame.set(null);
+        renderBoard(gameBoard.snapshot());
         steps = 0;
         fieldScores.setEnabled(true);
         fieldScores.requestFocus();
@@ -283,41 +338,78 @@ public class GameFrame extends JFrame implements Observer {
 
 
     /**
-     * Changes the status of related stuffs (menus, etc.) of the auto play.
+     * Changes the status of the auto play and of related stuffs (menus, etc.).
+     * This must be called on the event dispatch thread.
+     * @param autoPlayStatus the new status of the auto play
      */
-    private void changeAutoPlayStatus() {
-        autoPlayStatus = !autoPlayStatus;
-        itemNewGame.setEnabled(!autoPlayStatus);
+    private void setAutoPlayStatus(boolean autoPlayStatus) {
+        this.autoPlayStatus = autoPlayStatus;
+        updateAutoPlayMenus();
+    }
+
+
+    /**
+     * Enables or disables the menus according to the status of the auto play.
+     * "New Game" and "Settings" stay enabled, since they stop the auto play.
+     */
+    private void updateAutoPlayMenus() {
         subItemAutoPlayPause.setEnabled(autoPlayStatus);
         subItemAutoPlayStart.setEnabled(!autoPlayStatus);
-        itemSettings.setEnabled(!autoPlayStatus);
     }
 
 
     /**
-     * Runs the underlying AI to play the game automatically.
+     * Stops the auto play, if it is running, without waiting for it: its
+     * current search is cancelled, and it finishes soon afterwards without
+     * playing any more move. Once it returns, no move of the auto play is played
+     * any more. This must be called on the event dispatch thread.
+     */
+    private void stopAutoPlay() {
+        synchronized (autoPlayLock) {
+            if (autoPlayToken != null)
+                autoPlayToken.cancel();
+        }
+        setAutoPlayStatus(false);
+    }
+
+
+    /**
+     * Waits until the latest run of the auto play has finished, but not longer
+     * than {@link GameFrameConstants#AUTO_PLAY_STOP_TIMEOUT}. It must have been
+     * stopped first.
+     * @return true if the auto play has finished (or failed); false if it is
+     *         still running
+     */
+    private boolean awaitAutoPlay() {
+        if (autoPlayTask == null)
+            return true;
+        try {
+            autoPlayTask.get(GameFrameConstants.AUTO_PLAY_STOP_TIMEOUT, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+
+    /**
+     * Runs the underlying AI to play the game automatically on the auto play
+     * thread.
      */
     private void autoPlay() {
         if (!gameBoard.isGameOver()) {
-            Thread autoPlayThread = new Thread(() -> {
-                try {
-                    int searchTreeLevel = config.getSearchTreeLevel();
-                    int sleepTime = config.getSleepTime();
-                    while (autoPlayStatus) {
-                        SearchTree searchTree = new SearchTree(gameBoard, searchTreeLevel);
-                        Board temp = searchTree.nextStep(steps);
-                        if (temp != null)
-                            updateTiles(temp);
-                        Thread.sleep(sleepTime);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            });
-            synchronized (this) {
-                changeAutoPlayStatus();
-                autoPlayThread.start();
-            }
+            if (!prepareEvaluator(config.getEvaluationMode(), config.getWeightsFile()))
+                return;
+            CancellationToken token = new CancellationToken();
+            autoPlayToken = token;
+            setAutoPlayStatus(true);
+            autoPlayTask = autoPlayExecutor.submit(() -> runAutoPlay(token));
         } else
             JOptionPane.showMessageDialog(null,
                     GameFrameConstants.MESSAGE_START_AFTER_GAME_OVER_DIALOG,
@@ -326,6 +418,120 @@ public class GameFrame extends JFrame implements Observer {
     }
 
 
+    /**
+     * Plays the game automatically until the game is over or the given token is
+     * cancelled. The token cancels the search of the current move, and wakes
+     * the thread up while it is waiting between two moves, so the run finishes
+     * promptly once it is stopped, and never plays a move found after that.
+     * <p>While pondering, the search of a move overlaps the sleep time after the
+     * last move, which only hides its time. If the iterative deepening search
+     * may take the rest of the sleep time as well, its budget is raised to that
+     * time when it is longer, so it searches deeper at the same pace.</p>
+     * @param token the token stopping this run
+     */
+    private void runAutoPlay(CancellationToken token) {
+        int searchTreeLevel = config.getSearchTreeLevel();
+        DepthPolicy depthPolicy = config.isAdaptiveLevel()
+                ? new AdaptiveDepthPolicy(SettingsConstants.SEARCH_TREE_LEVEL_MIN, searchTreeLevel)
+                : DepthPolicy.fixed(searchTreeLevel);
+        int sleepTime = config.getSleepTime();
+        boolean pondering = config.isPondering();
+        boolean ponderingDeepening = pondering && config.isPonderingDeepening();
+        int moveBudget = config.getMoveBudget();
+        metrics.setAutoPlayRunning(true);
+        try (AutoPlayer autoPlayer = new AutoPlayer(config.getSearchMode(), depthPolicy, evaluator,
+                config.getSearchThreads(), moveBudget)) {
+            autoPlayer.setMetrics(metrics);
+            autoPlayer.setNodeLimit(config.getSearchNodeLimit());
+            long nextMoveTime = System.nanoTime();
+            while (autoPlayStatus && !token.isCancelled()) {
+                if (ponderingDeepening)
+                    autoPlayer.setMoveBudget(Math.max(moveBudget,
+                            (int) TimeUnit.NANOSECONDS.toMillis(nextMoveTime - System.nanoTime())));
+                Board temp = autoPlayer.nextStep(gameBoard, steps, token);
+                // While pondering, the search of the next move starts as soon as
+                // a move is shown, so only the rest of the sleep time is waited
+                // for.
+                if (pondering && token.awaitCancellation(nextMoveTime - System.nanoTime(), TimeUnit.NANOSECONDS))
+                    break;
+                // The token is checked and the move played at once, so a move
+                // found just before the run is stopped is never played after it.
+                synchronized (autoPlayLock) {
+                    if (token.isCancelled())
+                        break;
+                    if (temp != null)
+                        updateTiles(temp);
+                }
+                if (pondering)
+                    nextMoveTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleepTime);
+                else if (token.awaitCancellation(sleepTime, TimeUnit.MILLISECONDS))
+                    break;
+            }
+        } catch (CancellationException e) {
+            // The run has been stopped during a search, whose move is dropped.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            metrics.setAutoPlayRunning(false);
+        }
+    }
+
+
+    /**
+     * Prepares the evaluation function of the auto player for the given
+     * evaluation mode, unless it has been prepared already for the same mode
+     * and weights file. An error message is shown if the weights file cannot be
+     * loaded.
+     * @param evaluationMode the evaluation mode
+     * @param weightsFile the name of the weights file of the n-tuple evaluation
+     * @return true if the evaluation function is ready; false otherwise
+     */
+    private boolean prepareEvaluator(EvaluationModes evaluationMode, String weightsFile) {
+        if (evaluationMode == evaluatorMode && weightsFile.equals(evaluatorWeightsFile))
+            return true;
+        try {
+            if (evaluationMode == EvaluationModes.N_TUPLE && weightsFile.isEmpty())
+                throw new IOException(GameFrameConstants.MESSAGE_NO_WEIGHTS_FILE);
+            evaluator = AutoPlayer.createEvaluator(evaluationMode, weightsFile);
+            evaluatorMode = evaluationMode;
+            evaluatorWeightsFile = weightsFile;
+            return true;
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null,
+                    GameFrameConstants.MESSAGE_WEIGHTS_FILE_DIALOG_PREFIX + e.getMessage(),
+                    GameFrameConstants.CAPTION_WEIGHTS_FILE_DIALOG,
+                    JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
+
+    /**
+     * Serves the search metrics on the given local port, unless they are
+     * served on it already. The server on the previous port is stopped, and an
+     * error message is shown if the new port cannot be listened on.
+     * @param port the local port, or 0 not to serve the metrics
+     */
+    private void serveMetrics(int port) {
+        if (metricsServer != null) {
+            if (metricsServer.getPort() == port)
+                return;
+            metricsServer.close();
+            metricsServer = null;
+        }
+        if (port == 0)
+            return;
+        try {
+            metricsServer = new MetricsServer(metrics, port);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null,
+                    GameFrameConstants.MESSAGE_METRICS_DIALOG_PREFIX + e.getMessage(),
+                    GameFrameConstants.CAPTION_METRICS_DIALOG,
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+
     /**
      * Exits the game with a notification.
      */
@@ -335,8 +541,11 @@ public class GameFrame extends JFrame implements Observer {
                 GameFrameConstants.CAPTION_QUIT_DIALOG,
                 JOptionPane.OK_CANCEL_OPTION,
                 JOptionPane.QUESTION_MESSAGE);
-        if (option == JOptionPane.OK_OPTION)
+        if (option == JOptionPane.OK_OPTION) {
+            stopAutoPlay();
+            autoPlayExecutor.shutdown();
             System.exit(0);
+        }
     }
 
 
@@ -369,30 +578,41 @@ public class GameFrame extends JFrame implements Observer {
 
 
     /**
-     * Updates all the tiles and information with a given new game board.
+     * Plays a given new game board, and publishes it to be rendered by the
+     * event dispatch thread. It may be called by any thread, and never touches
+     * the components itself: only the latest board is rendered, however fast
+     * the boards are played. Once the game is over, the auto play stops at once.
      * @param newBoard the new board
      */
     private void updateTiles(Board newBoard) {
         gameBoard.replaceBoardWith(newBoard);
-        if (gameBoard.getScores() > config.getBestScores())
-            config.setBestRecord(config.getPlayerName(), gameBoard.getScores());
-        int[][] board = gameBoard.getBoard();
-        for (int row = 0; row < CoreConstants.BOARD_DIMENSION; row++) {
-            for (int column = 0; column < CoreConstants.BOARD_DIMENSION; column++) {
-                String tile = Utility.tileToString(board[row][column]);
-                tiles[row][column].setText(tile);
-                tiles[row][column].setBackground(GeneralGUIConstants.COLORS.get(tile));
-            }
-        }
-        fieldScores.setText(String.valueOf(gameBoard.getScores()));
         steps++;
-        if (gameBoard.isGameOver()) {
-            changeAutoPlayStatus();
+        boolean gameOver = gameBoard.isGameOver();
+        if (gameOver)
+            autoPlayStatus = false;
+        pendingFrame.set(new Frame(gameBoard.snapshot(), steps, gameOver));
+    }
+
+
+    /**
+     * Renders the latest published frame, if any, on the event dispatch
+     * thread: updates all the tiles and information, saves the best record, and
+     * tells the player if the game is over.
+     */
+    private void renderFrame() {
+        Frame frame = pendingFrame.getAndSet(null);
+        if (frame == null)
+            return;
+        renderBoard(frame.board);
+        if (frame.board.getScores() > config.getBestScores())
+            config.setBestRecord(config.getPlayerName(), frame.board.getScores());
+        if (frame.gameOver) {
+            updateAutoPlayMenus();
             String message = GameFrameConstants.MESSAGE_GAME_OVER_DIALOG_PREFIX
                     + config.getPlayerName() + "!\n"
-                    + GameFrameConstants.LABEL_SCORES_PREFIX + fieldScores.getText() + "\n"
-                    + GameFrameConstants.LABEL_MAX_TILE_PREFIX + gameBoard.getMaxTile() + "\n"
-                    + GameFrameConstants.LABEL_STEPS_PREFIX + steps;
+                    + GameFrameConstants.LABEL_SCORES_PREFIX + frame.board.getScores() + "\n"
+                    + GameFrameConstants.LABEL_MAX_TILE_PREFIX + frame.board.getMaxTile() + "\n"
+                    + GameFrameConstants.LABEL_STEPS_PREFIX + frame.steps;
             JOptionPane.showMessageDialog(null, message,
                     GameFrameConstants.CAPTION_GAME_OVER_DIALOG,
                     JOptionPane.WARNING_MESSAGE);
@@ -400,6 +620,41 @@ public class GameFrame extends JFrame implements Observer {
     }
 
 
+    /**
+     * Updates all the tiles and the scores with a given snapshot of the game
+     * board.
+     * @param frameBoard the snapshot of the game board to show
+     */
+    private void renderBoard(BoardSnapshot frameBoard) {
+        boardView.setBoard(frameBoard);
+        fieldScores.setText(String.valueOf(frameBoard.getScores()));
+    }
+
+
+    /**
+     * The inner class of a frame published to the event dispatch thread: a
+     * snapshot of the game board, the steps taken up to it, and whether the game is over.
+     */
+    private static class Frame {
+        private final BoardSnapshot board;
+        private final int steps;
+        private final boolean gameOver;
+
+
+        /**
+         * Constructs a frame object.
+         * @param board the snapshot of the game board
+         * @param steps the steps taken up to the board
+         * @param gameOver whether the game is over
+         */
+        Frame(BoardSnapshot board, int steps, boolean gameOver) {
+            this.board = board;
+            this.steps = steps;
+            this.gameOver = gameOver;
+        }
+    }
+
+
     /**
      * Updates all of the settings once the configurations change.
      * @param o <strong>must</strong> be the Configurations object
@@ -413,6 +668,7 @@ public class GameFrame extends JFrame implements Observer {
             setWindowTitle(newConfig.getPlayerName());
             fieldBestScores.setText(String.valueOf(newConfig.getBestScores())
                     + " (" + newConfig.getBestPlayerName() + ")");
+            serveMetrics(newConfig.getMetricsPort());
         }
     }
 }
@@ -13,6 +13,8 @@ import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.JSpinner;
 import javax.swing.JSlider;
+import javax.swing.JComboBox;
+import javax.swing.JCheckBox;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.BoxLayout;
@@ -20,6 +22,8 @@ import javax.swing.Box;
 import javax.swing.WindowConstants;
 
 import yutongz1997.auto2048.lib.Configurations;
+import yutongz1997.auto2048.lib.CoreConstants.EvaluationModes;
+import yutongz1997.auto2048.lib.CoreConstants.SearchModes;
 import yutongz1997.auto2048.lib.GeneralGUIConstants;
 import yutongz1997.auto2048.lib.SettingsConstants;
 
@@ -35,7 +39,17 @@ class SettingsDialog extends JDialog {
     private JPanel subPanelButton;
     private JTextField fieldPlayerName;
     private JSlider sliderSleepTime;
+    private JCheckBox checkPondering;
+    private JCheckBox checkPonderingDeepening;
+    private JSpinner spinnerMoveBudget;
     private JSpinner spinnerSearchLevel;
+    private JCheckBox checkAdaptiveLevel;
+    private JComboBox<SearchModes> comboSearchMode;
+    private JSpinner spinnerSearchThreads;
+    private JSpinner spinnerSearchNodeLimit;
+    private JComboBox<EvaluationModes> comboEvaluationMode;
+    private JTextField fieldWeightsFile;
+    private JSpinner spinnerMetricsPort;
     // The configuration of the game. This will be passed back to the game's window
     // to apply all settings.
     private Configurations config;
@@ -128,6 +142,35 @@ class SettingsDialog extends JDialog {
         subPanelSleepTime.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
         subPanelSleepTime.add(sliderSleepTime);
 
+        checkPondering = new JCheckBox(SettingsConstants.LABEL_PONDERING, config.isPondering());
+        checkPondering.setAlignmentX(Component.LEFT_ALIGNMENT);
+        subPanelSleepTime.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelSleepTime.add(checkPondering);
+
+        final JPanel subPanelMoveBudget = new JPanel();
+        subPanelMoveBudget.setLayout(new BoxLayout(subPanelMoveBudget, BoxLayout.Y_AXIS));
+        subPanelMoveBudget.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final JLabel labelMoveBudget = new JLabel(SettingsConstants.LABEL_MOVE_BUDGET);
+        labelMoveBudget.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final SpinnerNumberModel budgetModel = new SpinnerNumberModel(config.getMoveBudget(),
+                SettingsConstants.MOVE_BUDGET_MIN,
+                SettingsConstants.MOVE_BUDGET_MAX, SettingsConstants.MOVE_BUDGET_STEP);
+        spinnerMoveBudget = new JSpinner(budgetModel);
+        spinnerMoveBudget.setAlignmentX(Component.LEFT_ALIGNMENT);
+        labelMoveBudget.setLabelFor(spinnerMoveBudget);
+
+        subPanelMoveBudget.add(labelMoveBudget);
+        subPanelMoveBudget.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelMoveBudget.add(spinnerMoveBudget);
+
+        checkPonderingDeepening = new JCheckBox(SettingsConstants.LABEL_PONDERING_DEEPENING,
+                config.isPonderingDeepening());
+        checkPonderingDeepening.setAlignmentX(Component.LEFT_ALIGNMENT);
+        subPanelMoveBudget.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelMoveBudget.add(checkPonderingDeepening);
+
         final JPanel subPanelSearchLevel = new JPanel();
         subPanelSearchLevel.setLayout(new BoxLayout(subPanelSearchLevel, BoxLayout.Y_AXIS));
         subPanelSearchLevel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -148,9 +191,133 @@ class SettingsDialog extends JDialog {
         subPanelSearchLevel.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
         subPanelSearchLevel.add(spinnerSearchLevel);
 
+        checkAdaptiveLevel = new JCheckBox(SettingsConstants.LABEL_ADAPTIVE_LEVEL,
+                config.isAdaptiveLevel());
+        checkAdaptiveLevel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        subPanelSearchLevel.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelSearchLevel.add(checkAdaptiveLevel);
+
+        final JPanel subPanelSearchMode = new JPanel();
+        subPanelSearchMode.setLayout(new BoxLayout(subPanelSearchMode, BoxLayout.Y_AXIS));
+        subPanelSearchMode.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final JLabel labelSearchMode = new JLabel(SettingsConstants.LABEL_SEARCH_MODE);
+        labelSearchMode.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        comboSearchMode = new JComboBox<>(SearchModes.values());
+        comboSearchMode.setAlignmentX(Component.LEFT_ALIGNMENT);
+        comboSearchMode.setSelectedItem(config.getSearchMode());
+        labelSearchMode.setLabelFor(comboSearchMode);
+
+        subPanelSearchMode.add(labelSearchMode);
+        subPanelSearchMode.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelSearchMode.add(comboSearchMode);
+
+        final JPanel subPanelSearchThreads = new JPanel();
+        subPanelSearchThreads.setLayout(new BoxLayout(subPanelSearchThreads, BoxLayout.Y_AXIS));
+        subPanelSearchThreads.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final JLabel labelSearchThreads = new JLabel(SettingsConstants.LABEL_SEARCH_THREADS);
+        labelSearchThreads.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final SpinnerNumberModel threadsModel = new SpinnerNumberModel(config.getSearchThreads(),
+                SettingsConstants.SEARCH_THREADS_MIN,
+                SettingsConstants.SEARCH_THREADS_MAX, 1);
+        spinnerSearchThreads = new JSpinner(threadsModel);
+        spinnerSearchThreads.setAlignmentX(Component.LEFT_ALIGNMENT);
+        ((JSpinner.DefaultEditor) (spinnerSearchThreads.getEditor())).getTextField()
+                .setEditable(false);
+        labelSearchThreads.setLabelFor(spinnerSearchThreads);
+
+        subPanelSearchThreads.add(labelSearchThreads);
+        subPanelSearchThreads.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelSearchThreads.add(spinnerSearchThreads);
+
+        final JPanel subPanelSearchNodeLimit = new JPanel();
+        subPanelSearchNodeLimit.setLayout(new BoxLayout(subPanelSearchNodeLimit, BoxLayout.Y_AXIS));
+        subPanelSearchNodeLimit.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final JLabel labelSearchNodeLimit = new JLabel(SettingsConstants.LABEL_SEARCH_NODE_LIMIT);
+        labelSearchNodeLimit.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final SpinnerNumberModel nodeLimitModel = new SpinnerNumberModel(config.getSearchNodeLimit(),
+                SettingsConstants.SEARCH_NODE_LIMIT_MIN,
+                SettingsConstants.SEARCH_NODE_LIMIT_MAX, SettingsConstants.SEARCH_NODE_LIMIT_STEP);
+        spinnerSearchNodeLimit = new JSpinner(nodeLimitModel);
+        spinnerSearchNodeLimit.setAlignmentX(Component.LEFT_ALIGNMENT);
+        labelSearchNodeLimit.setLabelFor(spinnerSearchNodeLimit);
+
+        subPanelSearchNodeLimit.add(labelSearchNodeLimit);
+        subPanelSearchNodeLimit.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelSearchNodeLimit.add(spinnerSearchNodeLimit);
+
+        final JPanel subPanelEvaluationMode = new JPanel();
+        subPanelEvaluationMode.setLayout(new BoxLayout(subPanelEvaluationMode, BoxLayout.Y_AXIS));
+        subPanelEvaluationMode.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final JLabel labelEvaluationMode = new JLabel(SettingsConstants.LABEL_EVALUATION_MODE);
+        labelEvaluationMode.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        comboEvaluationMode = new JComboBox<>(EvaluationModes.values());
+        comboEvaluationMode.setAlignmentX(Component.LEFT_ALIGNMENT);
+        comboEvaluationMode.setSelectedItem(config.getEvaluationMode());
+        labelEvaluationMode.setLabelFor(comboEvaluationMode);
+
+        subPanelEvaluationMode.add(labelEvaluationMode);
+        subPanelEvaluationMode.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelEvaluationMode.add(comboEvaluationMode);
+
+        final JPanel subPanelWeightsFile = new JPanel();
+        subPanelWeightsFile.setLayout(new BoxLayout(subPanelWeightsFile, BoxLayout.Y_AXIS));
+        subPanelWeightsFile.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final JLabel labelWeightsFile = new JLabel(SettingsConstants.LABEL_WEIGHTS_FILE);
+        labelWeightsFile.setAlignmentX(Component.LEFT_ALIGNMENT);
+        fieldWeightsFile = new JTextField(config.getWeightsFile());
+        fieldWeightsFile.setAlignmentX(Component.LEFT_ALIGNMENT);
+        labelWeightsFile.setLabelFor(fieldWeightsFile);
+
+        subPanelWeightsFile.add(labelWeightsFile);
+        subPanelWeightsFile.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelWeightsFile.add(fieldWeightsFile);
+
+        final JPanel subPanelMetricsPort = new JPanel();
+        subPanelMetricsPort.setLayout(new BoxLayout(subPanelMetricsPort, BoxLayout.Y_AXIS));
+        subPanelMetricsPort.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final JLabel labelMetricsPort = new JLabel(SettingsConstants.LABEL_METRICS_PORT);
+        labelMetricsPort.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        final SpinnerNumberModel portModel = new SpinnerNumberModel(config.getMetricsPort(),
+                SettingsConstants.METRICS_PORT_MIN,
+                SettingsConstants.METRICS_PORT_MAX, 1);
+        spinnerMetricsPort = new JSpinner(portModel);
+        spinnerMetricsPort.setAlignmentX(Component.LEFT_ALIGNMENT);
+        // Show the port without the grouping separator.
+        spinnerMetricsPort.setEditor(new JSpinner.NumberEditor(spinnerMetricsPort, "#"));
+        labelMetricsPort.setLabelFor(spinnerMetricsPort);
+
+        subPanelMetricsPort.add(labelMetricsPort);
+        subPanelMetricsPort.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        subPanelMetricsPort.add(spinnerMetricsPort);
+
         panelAutoPlay.add(subPanelSleepTime);
         panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        panelAutoPlay.add(subPanelMoveBudget);
+        panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        panelAutoPlay.add(subPanelSearchMode);
+        panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
         panelAutoPlay.add(subPanelSearchLevel);
+        panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        panelAutoPlay.add(subPanelSearchThreads);
+        panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        panelAutoPlay.add(subPanelSearchNodeLimit);
+        panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        panelAutoPlay.add(subPanelEvaluationMode);
+        panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        panelAutoPlay.add(subPanelWeightsFile);
+        panelAutoPlay.add(Box.createRigidArea(GeneralGUIConstants.DIM_VERTICAL_SMALL));
+        panelAutoPlay.add(subPanelMetricsPort);
     }
 
 
@@ -169,7 +336,17 @@ class SettingsDialog extends JDialog {
                 config.reset();
                 fieldPlayerName.setText(config.getPlayerName());
                 sliderSleepTime.setValue(config.getSleepTime());
+                checkPondering.setSelected(config.isPondering());
+                checkPonderingDeepening.setSelected(config.isPonderingDeepening());
+                spinnerMoveBudget.setValue(config.getMoveBudget());
                 spinnerSearchLevel.setValue(config.getSearchTreeLevel());
+                checkAdaptiveLevel.setSelected(config.isAdaptiveLevel());
+                comboSearchMode.setSelectedItem(config.getSearchMode());
+                spinnerSearchThreads.setValue(config.getSearchThreads());
+                spinnerSearchNodeLimit.setValue(config.getSearchNodeLimit());
+                comboEvaluationMode.setSelectedItem(config.getEvaluationMode());
+                fieldWeightsFile.setText(config.getWeightsFile());
+                spinnerMetricsPort.setValue(config.getMetricsPort());
             }
         });
 
@@ -178,7 +355,17 @@ class SettingsDialog extends JDialog {
             String text = fieldPlayerName.getText();
             config.setPlayerName((text.length() == 0) ? SettingsConstants.DEFAULT_PLAYER_NAME : text);
             config.setSearchTreeLevel(Integer.parseInt(spinnerSearchLevel.getValue().toString()));
+            config.setAdaptiveLevel(checkAdaptiveLevel.isSelected());
+            config.setSearchMode((SearchModes) comboSearchMode.getSelectedItem());
+            config.setSearchThreads(Integer.parseInt(spinnerSearchThreads.getValue().toString()));
+            config.setSearchNodeLimit(Integer.parseInt(spinnerSearchNodeLimit.getValue().toString()));
             config.setSleepTime(sliderSleepTime.getValue());
+            config.setPondering(checkPondering.isSelected());
+            config.setPonderingDeepening(checkPonderingDeepening.isSelected());
+            config.setMoveBudget(Integer.parseInt(spinnerMoveBudget.getValue().toString()));
+            config.setEvaluationMode((EvaluationModes) comboEvaluationMode.getSelectedItem());
+            config.setWeightsFile(fieldWeightsFile.getText().trim());
+            config.setMetricsPort(Integer.parseInt(spinnerMetricsPort.getValue().toString()));
             dispose();
         });
         getRootPane().setDefaultButton(buttonOK);
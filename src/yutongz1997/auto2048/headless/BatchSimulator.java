@@ -0,0 +1,654 @@
+package yutongz1997.auto2048.headless;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+
+import yutongz1997.auto2048.core.AdaptiveDepthPolicy;
+import yutongz1997.auto2048.core.AutoPlayer;
+import yutongz1997.auto2048.core.Board;
+import yutongz1997.auto2048.core.DepthPolicy;
+import yutongz1997.auto2048.core.Evaluator;
+import yutongz1997.auto2048.core.RandomSpawnSource;
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.EvaluationModes;
+import yutongz1997.auto2048.lib.CoreConstants.ReplacementPolicies;
+import yutongz1997.auto2048.lib.CoreConstants.SearchModes;
+import yutongz1997.auto2048.lib.HeadlessConstants;
+import yutongz1997.auto2048.lib.SettingsConstants;
+import yutongz1997.auto2048.metrics.MetricsServer;
+import yutongz1997.auto2048.metrics.SearchMetrics;
+
+
+/**
+ * The class of the headless batch simulator, which plays a number of full games
+ * with a given search configuration on a pool of threads, as fast as possible
+ * (without the sleep time between the moves of the game's window), and reports
+ * the throughput, the distribution of the scores, the rates of reaching large
+ * numbers, and the percentiles of the time taken by each move.
+ * <p>The n-th game spawns its numbers from a source seeded with the base seed
+ * plus n, and is played by an auto player cleared of the earlier games of its
+ * thread (see {@link AutoPlayer#newGame()}). So every game can be replayed
+ * alone from its seed (see {@link #replay(long)}), exactly in every search mode
+ * but the iterative deepening one, whose depth depends on the time taken by
+ * the search. The seeds of the games not reaching 2048 are reported, and so is
+ * the number of moves whose search trees have been cut short by the node limit,
+ * the hit rate of the transposition tables of the expectimax searches, and the
+ * number of nodes they have pruned by the probability cutoff.</p>
+ * @author Yutong Zhang
+ */
+public class BatchSimulator {
+    // The search configuration.
+    private SearchModes searchMode;
+    private DepthPolicy depthPolicy;
+    private Evaluator evaluator;
+    private int searchThreads;
+    private int moveBudget;
+    private int nodeLimit = SettingsConstants.SEARCH_NODE_LIMIT_DEFAULT;
+    private ReplacementPolicies replacementPolicy = ReplacementPolicies.DEPTH_PREFERRED;
+    private double probabilityThreshold = CoreConstants.PROBABILITY_CUTOFF_DEFAULT_THRESHOLD;
+    // The metrics recording every decision of all threads (null if not recorded).
+    private SearchMetrics metrics;
+
+
+    /**
+     * Constructs a batch simulator object. Every thread plays with its own
+     * {@link AutoPlayer} of the given configuration.
+     * @param searchMode the search mode
+     * @param depthPolicy the policy choosing the level of the search for every move
+     * @param evaluator the evaluation function of the boards (shared by all
+     *                  threads), or null to use {@link Board#evaluate(int)}
+     * @param searchThreads the number of threads of every parallel search
+     * @param moveBudget the time budget (in milliseconds) of each move of the
+     *                   iterative deepening search
+     */
+    public BatchSimulator(SearchModes searchMode, DepthPolicy depthPolicy, Evaluator evaluator,
+                          int searchThreads, int moveBudget) {
+        this.searchMode = searchMode;
+        this.depthPolicy = depthPolicy;
+        this.evaluator = evaluator;
+        this.searchThreads = searchThreads;
+        this.moveBudget = moveBudget;
+    }
+
+
+    /**
+     * Sets the metrics recording every decision of all threads.
+     * @param metrics the search metrics, or null not to record the decisions
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Sets the maximum number of nodes of the search tree of every thread (see
+     * {@link AutoPlayer#setNodeLimit(int)}).
+     * @param nodeLimit the maximum number of nodes
+     */
+    public void setNodeLimit(int nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+
+    /**
+     * Sets the replacement policy of the transposition table of every thread
+     * (see {@link AutoPlayer#setReplacementPolicy(ReplacementPolicies)}).
+     * @param replacementPolicy the replacement policy
+     */
+    public void setReplacementPolicy(ReplacementPolicies replacementPolicy) {
+        this.replacementPolicy = replacementPolicy;
+    }
+
+
+    /**
+     * Sets the threshold of the probability cutoff of every thread (see
+     * {@link AutoPlayer#setProbabilityThreshold(double)}).
+     * @param probabilityThreshold the threshold of the cumulative possibility
+     */
+    public void setProbabilityThreshold(double probabilityThreshold) {
+        this.probabilityThreshold = probabilityThreshold;
+    }
+
+
+    /**
+     * Plays the given number of games on the given number of threads.
+     * @param games the number of games
+     * @param threads the number of threads playing the games
+     * @param seed the base seed of the games
+     * @return the results of all games
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the games
+     * @throws ExecutionException if a game fails
+     */
+    public Report simulate(int games, int threads, long seed) throws InterruptedException, ExecutionException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        AtomicInteger startedGameNumber = new AtomicInteger();
+        List<Future<List<GameResult>>> futures = new ArrayList<>(threads);
+        long startTime = System.nanoTime();
+        if (metrics != null)
+            metrics.setAutoPlayRunning(true);
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(workers.submit(() -> {
+                    List<GameResult> results = new ArrayList<>();
+                    try (AutoPlayer autoPlayer = createAutoPlayer()) {
+                        autoPlayer.setMetrics(metrics);
+                        int gameIndex;
+                        while ((gameIndex = startedGameNumber.getAndIncrement()) < games)
+                            results.add(playGame(autoPlayer, seed + gameIndex));
+                    }
+                    return results;
+                }));
+            }
+            List<GameResult> results = new ArrayList<>(games);
+            for (Future<List<GameResult>> future : futures)
+                results.addAll(future.get());
+            return new Report(results, System.nanoTime() - startTime);
+        } finally {
+            workers.shutdownNow();
+            if (metrics != null)
+                metrics.setAutoPlayRunning(false);
+        }
+    }
+
+
+    /**
+     * Replays the game of the given seed alone, on the calling thread with a
+     * new auto player, which is not recorded to the metrics. Unless the search
+     * is time-budgeted, it ends with the same scores as the game of the same
+     * seed played in a batch.
+     * @param seed the seed of the game
+     * @return the scores of the game
+     */
+    public int replay(long seed) {
+        try (AutoPlayer autoPlayer = createAutoPlayer()) {
+            return playGame(autoPlayer, seed).scores;
+        }
+    }
+
+
+    /**
+     * Creates an auto player of the search configuration.
+     * @return the auto player
+     */
+    private AutoPlayer createAutoPlayer() {
+        AutoPlayer autoPlayer = new AutoPlayer(searchMode, depthPolicy, evaluator, searchThreads, moveBudget);
+        autoPlayer.setNodeLimit(nodeLimit);
+        autoPlayer.setReplacementPolicy(replacementPolicy);
+        autoPlayer.setProbabilityThreshold(probabilityThreshold);
+        return autoPlayer;
+    }
+
+
+    /**
+     * Plays a full game from a new board, with an auto player cleared of the
+     * earlier games (see {@link AutoPlayer#newGame()}).
+     * @param autoPlayer the auto player
+     * @param seed the seed of the spawn source of the game
+     * @return the result of the game
+     */
+    private static GameResult playGame(AutoPlayer autoPlayer, long seed) {
+        Board.setSpawnSource(new RandomSpawnSource(seed));
+        Board gameBoard = new Board();
+        autoPlayer.newGame();
+        long startNodeLimitHits = autoPlayer.getNodeLimitHitCount();
+        long startTranspositionHits = autoPlayer.getTranspositionHitCount();
+        long startTranspositionMisses = autoPlayer.getTranspositionMissCount();
+        long startPrunedNodes = autoPlayer.getPrunedNodeCount();
+        int steps = 0;
+        long[] moveTimes = new long[HeadlessConstants.SIMULATOR_INITIAL_MOVES];
+        while (!gameBoard.isGameOver()) {
+            long startTime = System.nanoTime();
+            Board nextStep = autoPlayer.nextStep(gameBoard, steps);
+            long moveTime = System.nanoTime() - startTime;
+            if (nextStep == null)
+                break;
+            if (steps == moveTimes.length)
+                moveTimes = Arrays.copyOf(moveTimes, 2 * moveTimes.length);
+            moveTimes[steps++] = moveTime;
+            gameBoard = nextStep;
+        }
+        return new GameResult(seed, gameBoard.getScores(), gameBoard.getMaxTile(), Arrays.copyOf(moveTimes, steps),
+                autoPlayer.getNodeLimitHitCount() - startNodeLimitHits,
+                autoPlayer.getTranspositionHitCount() - startTranspositionHits,
+                autoPlayer.getTranspositionMissCount() - startTranspositionMisses,
+                autoPlayer.getPrunedNodeCount() - startPrunedNodes);
+    }
+
+
+    /**
+     * The inner class containing the result of a game.
+     */
+    private static class GameResult {
+        private long seed;
+        private int scores;
+        private int maxTile;
+        // The time (in nanoseconds) taken by every move.
+        private long[] moveTimes;
+        // The number of moves cut short by the node limit.
+        private long nodeLimitHits;
+        // The number of lookups of the transposition table which have found a
+        // value and which have not.
+        private long transpositionHits;
+        private long transpositionMisses;
+        // The number of nodes pruned by the probability cutoff.
+        private long prunedNodes;
+
+
+        GameResult(long seed, int scores, int maxTile, long[] moveTimes, long nodeLimitHits,
+                   long transpositionHits, long transpositionMisses, long prunedNodes) {
+            this.seed = seed;
+            this.scores = scores;
+            this.maxTile = maxTile;
+            this.moveTimes = moveTimes;
+            this.nodeLimitHits = nodeLimitHits;
+            this.transpositionHits = transpositionHits;
+            this.transpositionMisses = transpositionMisses;
+            this.prunedNodes = prunedNodes;
+        }
+    }
+
+
+    /**
+     * The class containing the statistics of a batch of games.
+     */
+    public static class Report {
+        private int gameNumber;
+        private double elapsedSeconds;
+        // The scores of all games, and the time (in nanoseconds) taken by all
+        // moves, both in ascending order.
+        private int[] scores;
+        private long[] moveTimes;
+        // The number of games reaching every tile of REPORTED_TILES.
+        private int[] reachedNumbers;
+        // The seeds of the games not reaching the first tile of REPORTED_TILES,
+        // in ascending order, and the scores of these games.
+        private long[] failedSeeds;
+        private int[] failedScores;
+        // The number of moves cut short by the node limit.
+        private long nodeLimitHits;
+        // The number of lookups of the transposition tables which have found a
+        // value and which have not.
+        private long transpositionHits;
+        private long transpositionMisses;
+        // The number of nodes pruned by the probability cutoff.
+        private long prunedNodes;
+
+
+        /**
+         * Constructs a report object from the results of all games.
+         * @param results the results of all games
+         * @param elapsedTime the time (in nanoseconds) taken by the whole batch
+         */
+        Report(List<GameResult> results, long elapsedTime) {
+            gameNumber = results.size();
+            elapsedSeconds = elapsedTime / 1e9;
+            scores = new int[gameNumber];
+            reachedNumbers = new int[HeadlessConstants.REPORTED_TILES.length];
+            int moveNumber = 0;
+            for (GameResult result : results)
+                moveNumber += result.moveTimes.length;
+            moveTimes = new long[moveNumber];
+            int moveIndex = 0;
+            GameResult[] failedResults = results.stream()
+                    .filter(result -> result.maxTile < HeadlessConstants.REPORTED_TILES[0])
+                    .sorted(Comparator.comparingLong(result -> result.seed)).toArray(GameResult[]::new);
+            failedSeeds = Arrays.stream(failedResults).mapToLong(result -> result.seed).toArray();
+            failedScores = Arrays.stream(failedResults).mapToInt(result -> result.scores).toArray();
+            for (int i = 0; i < gameNumber; i++) {
+                GameResult result = results.get(i);
+                scores[i] = result.scores;
+                for (int j = 0; j < reachedNumbers.length; j++)
+                    if (result.maxTile >= HeadlessConstants.REPORTED_TILES[j])
+                        reachedNumbers[j]++;
+                System.arraycopy(result.moveTimes, 0, moveTimes, moveIndex, result.moveTimes.length);
+                moveIndex += result.moveTimes.length;
+                nodeLimitHits += result.nodeLimitHits;
+                transpositionHits += result.transpositionHits;
+                transpositionMisses += result.transpositionMisses;
+                prunedNodes += result.prunedNodes;
+            }
+            Arrays.sort(scores);
+            Arrays.sort(moveTimes);
+        }
+
+
+        /**
+         * Returns the number of games played per second.
+         * @return the number of games per second
+         */
+        public double getGamesPerSecond() {
+            return gameNumber / elapsedSeconds;
+        }
+
+
+        /**
+         * Returns the number of moves made per second.
+         * @return the number of moves per second
+         */
+        public double getMovesPerSecond() {
+            return moveTimes.length / elapsedSeconds;
+        }
+
+
+        /**
+         * Returns the mean scores of all games.
+         * @return the mean scores, or 0 if there is no game
+         */
+        public double getMeanScores() {
+            return (gameNumber == 0) ? 0 : (double) Arrays.stream(scores).asLongStream().sum() / gameNumber;
+        }
+
+
+        /**
+         * Returns a percentile of the scores of all games.
+         * @param percentile the percentile (0 - 100)
+         * @return the scores at the percentile
+         */
+        public int getScoresPercentile(double percentile) {
+            return (gameNumber == 0) ? 0 : scores[getPercentileIndex(percentile, gameNumber)];
+        }
+
+
+        /**
+         * Returns a percentile of the time taken by all moves.
+         * @param percentile the percentile (0 - 100)
+         * @return the time (in milliseconds) at the percentile
+         */
+        public double getMoveTimePercentile(double percentile) {
+            return (moveTimes.length == 0) ? 0
+                    : moveTimes[getPercentileIndex(percentile, moveTimes.length)] / 1e6;
+        }
+
+
+        /**
+         * Returns the ratio of games reaching a tile of at least the given number.
+         * @param tile the number of the tile, which must be one of the reported
+         *             tiles (see {@link HeadlessConstants#REPORTED_TILES})
+         * @return the ratio (0 - 1) of games reaching the tile
+         */
+        public double getReachRate(int tile) {
+            for (int i = 0; i < reachedNumbers.length; i++)
+                if (HeadlessConstants.REPORTED_TILES[i] == tile)
+                    return (gameNumber == 0) ? 0 : (double) reachedNumbers[i] / gameNumber;
+            throw new IllegalArgumentException("Not a reported tile: " + tile);
+        }
+
+
+        /**
+         * Returns the seeds of the games not reaching the first reported tile
+         * (see {@link HeadlessConstants#REPORTED_TILES}), which replay them.
+         * @return the seeds of the failed games in ascending order
+         */
+        public long[] getFailedSeeds() {
+            return failedSeeds.clone();
+        }
+
+
+        /**
+         * Returns the scores of the games not reaching the first reported tile,
+         * in the order of their seeds (see {@link #getFailedSeeds()}).
+         * @return the scores of the failed games
+         */
+        public int[] getFailedScores() {
+            return failedScores.clone();
+        }
+
+
+        /**
+         * Returns the number of moves whose search trees have been cut short by
+         * the node limit.
+         * @return the number of moves reaching the node limit
+         */
+        public long getNodeLimitHits() {
+            return nodeLimitHits;
+        }
+
+
+        /**
+         * Returns the ratio of hits to all lookups of the transposition tables.
+         * @return the hit rate, or 0 if there is no lookup (i.e. not in the
+         *         expectimax mode)
+         */
+        public double getTranspositionHitRate() {
+            long lookups = transpositionHits + transpositionMisses;
+            return (lookups == 0) ? 0 : (double) transpositionHits / lookups;
+        }
+
+
+        /**
+         * Returns the number of nodes pruned by the probability cutoff of the
+         * expectimax searches.
+         * @return the number of pruned nodes (0 in the other modes)
+         */
+        public long getPrunedNodes() {
+            return prunedNodes;
+        }
+
+
+        /**
+         * Converts the report to a readable multi-line string.
+         * @return the string representation of the report
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format("Games: %d in %.1f s (%.2f games/s, %.0f moves/s)%n",
+                    gameNumber, elapsedSeconds, getGamesPerSecond(), getMovesPerSecond()));
+            builder.append(String.format("Scores: mean %.0f, min %d", getMeanScores(), getScoresPercentile(0)));
+            for (double percentile : HeadlessConstants.SCORES_PERCENTILES)
+                builder.append(String.format(", p%s %d", formatPercentile(percentile),
+                        getScoresPercentile(percentile)));
+            builder.append(String.format(", max %d%n", getScoresPercentile(100)));
+            builder.append("Reach rate:");
+            for (int tile : HeadlessConstants.REPORTED_TILES)
+                builder.append(String.format(" %d %.1f%%", tile, 100 * getReachRate(tile)));
+            builder.append(String.format("%nMove time (ms):"));
+            for (double percentile : HeadlessConstants.MOVE_TIME_PERCENTILES)
+                builder.append(String.format(" p%s %.3f", formatPercentile(percentile),
+                        getMoveTimePercentile(percentile)));
+            builder.append(String.format(" max %.3f%n", getMoveTimePercentile(100)));
+            if (nodeLimitHits > 0)
+                builder.append(String.format("Node limit reached by %d of %d moves%n", nodeLimitHits,
+                        moveTimes.length));
+            if (transpositionHits + transpositionMisses > 0) {
+                builder.append(String.format("Transposition table: hit rate %.1f%% of %d lookups%n",
+                        100 * getTranspositionHitRate(), transpositionHits + transpositionMisses));
+                builder.append(String.format("Probability cutoff: %d nodes pruned%n", prunedNodes));
+            }
+            if (failedSeeds.length > 0) {
+                builder.append(String.format("Seeds of the games below %d:", HeadlessConstants.REPORTED_TILES[0]));
+                for (int i = 0; i < Math.min(failedSeeds.length, HeadlessConstants.REPORTED_FAILED_SEEDS); i++)
+                    builder.append(' ').append(failedSeeds[i]);
+                if (failedSeeds.length > HeadlessConstants.REPORTED_FAILED_SEEDS)
+                    builder.append(" ...");
+                builder.append(String.format("%n"));
+            }
+            return builder.toString();
+        }
+
+
+        /**
+         * Returns the index of a percentile in a sorted array (nearest rank).
+         * @param percentile the percentile (0 - 100)
+         * @param length the length of the array
+         * @return the index of the percentile
+         */
+        private static int getPercentileIndex(double percentile, int length) {
+            int rank = (int) Math.ceil(percentile / 100 * length);
+            return Math.min(Math.max(rank - 1, 0), length - 1);
+        }
+
+
+        /**
+         * Formats a percentile without a needless fraction, e.g. 50 and 99.9.
+         * @param percentile the percentile
+         * @return the formatted percentile
+         */
+        private static String formatPercentile(double percentile) {
+            return (percentile == Math.rint(percentile)) ? String.valueOf((int) percentile)
+                    : String.valueOf(percentile);
+        }
+    }
+
+
+    /**
+     * Replays the failed game of the highest seed alone, and checks that it
+     * ends with the same scores as in the batch, i.e. that its reported seed
+     * can be used to reproduce it. Being one of the last games started, it has
+     * most likely been played after other games on its thread.
+     * @param simulator the simulator which has played the batch
+     * @param report the report of the batch
+     * @return true if the game has been reproduced, or if there is no failed
+     *         game; false otherwise
+     */
+    private static boolean checkReplay(BatchSimulator simulator, Report report) {
+        long[] failedSeeds = report.getFailedSeeds();
+        if (failedSeeds.length == 0) {
+            System.out.println("Replay check: no failed game to replay");
+            return true;
+        }
+        int lastIndex = failedSeeds.length - 1;
+        int batchScores = report.getFailedScores()[lastIndex];
+        int replayScores = simulator.replay(failedSeeds[lastIndex]);
+        System.out.printf("Replay check: seed %d scores %d alone and %d in the batch (%s)%n", failedSeeds[lastIndex],
+                replayScores, batchScores, (replayScores == batchScores) ? "reproduced" : "NOT reproduced");
+        return replayScores == batchScores;
+    }
+
+
+    /**
+     * Runs the simulator from the command line.
+     * @param args the options of the simulator (see
+     *             {@link HeadlessConstants#USAGE_SIMULATOR})
+     */
+    public static void main(String[] args) {
+        int games = HeadlessConstants.SIMULATOR_DEFAULT_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        SearchModes searchMode = SettingsConstants.DEFAULT_SEARCH_MODE;
+        int searchTreeLevel = SettingsConstants.SEARCH_TREE_LEVEL_DEFAULT;
+        boolean adaptiveLevel = SettingsConstants.DEFAULT_ADAPTIVE_LEVEL;
+        EvaluationModes evaluationMode = SettingsConstants.DEFAULT_EVALUATION_MODE;
+        String weightsFile = SettingsConstants.DEFAULT_WEIGHTS_FILE;
+        int searchThreads = SettingsConstants.SEARCH_THREADS_DEFAULT;
+        int moveBudget = SettingsConstants.DEFAULT_MOVE_BUDGET;
+        int metricsPort = SettingsConstants.METRICS_PORT_DEFAULT;
+        int nodeLimit = SettingsConstants.SEARCH_NODE_LIMIT_DEFAULT;
+        ReplacementPolicies replacementPolicy = ReplacementPolicies.DEPTH_PREFERRED;
+        double probabilityThreshold = CoreConstants.PROBABILITY_CUTOFF_DEFAULT_THRESHOLD;
+        long seed = ThreadLocalRandom.current().nextLong();
+        boolean checkReplay = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--games":
+                        games = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--mode":
+                        searchMode = SearchModes.valueOf(args[++i]);
+                        break;
+                    case "--level":
+                        searchTreeLevel = Integer.parseInt(args[++i]);
+                        break;
+                    case "--adaptive":
+                        adaptiveLevel = true;
+                        break;
+                    case "--evaluation":
+                        evaluationMode = EvaluationModes.valueOf(args[++i]);
+                        break;
+                    case "--weights":
+                        weightsFile = args[++i];
+                        break;
+                    case "--search-threads":
+                        searchThreads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--budget":
+                        moveBudget = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--metrics-port":
+                        metricsPort = Integer.parseInt(args[++i]);
+                        break;
+                    case "--node-limit":
+                        nodeLimit = Integer.parseInt(args[++i]);
+                        break;
+                    case "--replacement":
+                        replacementPolicy = ReplacementPolicies.valueOf(args[++i]);
+                        break;
+                    case "--cutoff":
+                        probabilityThreshold = Double.parseDouble(args[++i]);
+                        break;
+                    case "--check-replay":
+                        checkReplay = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (games <= 0 || threads <= 0 || searchThreads <= 0 || moveBudget <= 0
+                    || searchTreeLevel < SettingsConstants.SEARCH_TREE_LEVEL_MIN
+                    || metricsPort < SettingsConstants.METRICS_PORT_MIN
+                    || metricsPort > SettingsConstants.METRICS_PORT_MAX
+                    || nodeLimit <= CoreConstants.DIRECTION_NUMBER
+                    || probabilityThreshold < 0 || probabilityThreshold > 1)
+                throw new IllegalArgumentException("Invalid option value");
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(HeadlessConstants.USAGE_SIMULATOR);
+            System.exit(1);
+        }
+
+        MetricsServer metricsServer = null;
+        try {
+            Evaluator evaluator = AutoPlayer.createEvaluator(evaluationMode, weightsFile);
+            DepthPolicy depthPolicy = adaptiveLevel
+                    ? new AdaptiveDepthPolicy(SettingsConstants.SEARCH_TREE_LEVEL_MIN, searchTreeLevel)
+                    : DepthPolicy.fixed(searchTreeLevel);
+            System.out.printf("Playing %d games on %d threads: %s, level %d%s, %s, seed %d%n", games, threads,
+                    searchMode, searchTreeLevel, adaptiveLevel ? " (adaptive)" : "", evaluationMode, seed);
+            BatchSimulator simulator = new BatchSimulator(searchMode, depthPolicy, evaluator,
+                    searchThreads, moveBudget);
+            simulator.setNodeLimit(nodeLimit);
+            simulator.setReplacementPolicy(replacementPolicy);
+            simulator.setProbabilityThreshold(probabilityThreshold);
+            if (metricsPort > 0) {
+                SearchMetrics metrics = new SearchMetrics();
+                metrics.register();
+                metricsServer = new MetricsServer(metrics, metricsPort);
+                simulator.setMetrics(metrics);
+            }
+            Report report = simulator.simulate(games, threads, seed);
+            System.out.print(report);
+            if (checkReplay && !checkReplay(simulator, report))
+                System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Unable to load the weights file or serve the metrics: " + e.getMessage());
+            System.exit(1);
+        } catch (JMException e) {
+            System.err.println("Unable to register the metrics: " + e.getMessage());
+            System.exit(1);
+        } catch (ExecutionException e) {
+            System.err.println("A game has failed: " + e.getCause());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (metricsServer != null)
+                metricsServer.close();
+        }
+    }
+}
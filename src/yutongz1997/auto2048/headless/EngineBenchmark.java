@@ -0,0 +1,267 @@
+package yutongz1997.auto2048.headless;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import yutongz1997.auto2048.core.BitBoard;
+import yutongz1997.auto2048.core.Board;
+import yutongz1997.auto2048.core.DepthFirstSearch;
+import yutongz1997.auto2048.core.SearchTree;
+import yutongz1997.auto2048.lib.CoreConstants.Directions;
+import yutongz1997.auto2048.lib.HeadlessConstants;
+import yutongz1997.auto2048.lib.SettingsConstants;
+
+
+/**
+ * The class of the microbenchmarks of the hot paths of the engine: moving
+ * (into a new board or in place), cloning, evaluating and checking a board,
+ * searching depth first, and constructing (or rebuilding) a search tree and
+ * finding its next step at every level from the minimum one up to a practical
+ * maximum. Every benchmark runs over a fixed corpus of early, middle and late
+ * game positions (see {@link HeadlessConstants}), first for some warm-up rounds
+ * so that the JIT compiler settles, and then for some measured rounds. Both
+ * the time and the memory allocated by the current thread are reported per
+ * operation, with the spread of the time across the measured rounds.
+ * @author Yutong Zhang
+ */
+public class EngineBenchmark {
+    // The sink of the results of all operations, which keeps the JIT compiler
+    // from removing them as dead code.
+    private static volatile long sink;
+    // All the directions (Directions.values() copies the array every time).
+    private static final Directions[] DIRECTIONS = Directions.values();
+
+    // The bean measuring the memory allocated by the current thread (null if
+    // the JVM does not support it).
+    private com.sun.management.ThreadMXBean allocationBean;
+    // The number of warm-up and measured rounds, and the duration (in
+    // milliseconds) of every round.
+    private int warmupRounds;
+    private int measuredRounds;
+    private long roundTime;
+
+
+    /**
+     * The interface of an operation being measured on a position.
+     */
+    private interface Operation {
+        /**
+         * Runs the operation once.
+         * @param index the index of the position in the corpus of the phase
+         * @return any value depending on the result of the operation
+         */
+        long run(int index);
+    }
+
+
+    /**
+     * Constructs a benchmark object.
+     * @param warmupRounds the number of warm-up rounds of every benchmark
+     * @param measuredRounds the number of measured rounds of every benchmark
+     * @param roundTime the duration (in milliseconds) of every round
+     */
+    public EngineBenchmark(int warmupRounds, int measuredRounds, long roundTime) {
+        this.warmupRounds = warmupRounds;
+        this.measuredRounds = measuredRounds;
+        this.roundTime = roundTime;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) bean;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+
+    /**
+     * Runs all the benchmarks whose names contain the filter, and prints the
+     * results on the standard output.
+     * @param maximumLevel the maximum level of the search tree benchmarks
+     * @param filter the part of the names of the benchmarks to run (an empty
+     *               string for all)
+     */
+    public void runAll(int maximumLevel, String filter) {
+        System.out.printf("%-28s %-6s %14s %12s %12s%n", "Benchmark", "Phase", "ns/op", "error", "B/op");
+        String[] phases = {"early", "middle", "late"};
+        long[][] corpus = {HeadlessConstants.BENCHMARK_EARLY_POSITIONS,
+                HeadlessConstants.BENCHMARK_MIDDLE_POSITIONS, HeadlessConstants.BENCHMARK_LATE_POSITIONS};
+        for (int phase = 0; phase < phases.length; phase++) {
+            Board[] positions = new Board[corpus[phase].length];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = new BitBoard(corpus[phase][i], 0).toBoard();
+
+            run("Board.move", phases[phase], positions.length, filter, index -> {
+                long result = 0;
+                for (Directions direction : Directions.values()) {
+                    Board movedBoard = positions[index].move(direction);
+                    if (movedBoard != null)
+                        result += movedBoard.getScores();
+                }
+                return result;
+            });
+            run("Board.makeMove", phases[phase], positions.length, filter, index -> {
+                long result = 0;
+                for (Directions direction : DIRECTIONS)
+                    if (positions[index].makeMove(direction)) {
+                        result += positions[index].getScores();
+                        positions[index].unmakeMove();
+                    }
+                return result;
+            });
+            run("Board.clone", phases[phase], positions.length, filter,
+                    index -> positions[index].clone().getScores());
+            run("Board.evaluate", phases[phase], positions.length, filter,
+                    index -> (long) positions[index].evaluate(HeadlessConstants.BENCHMARK_STEPS));
+            run("Board.isGameOver", phases[phase], positions.length, filter,
+                    index -> positions[index].isGameOver() ? 1 : 0);
+            for (int level = SettingsConstants.SEARCH_TREE_LEVEL_MIN; level <= maximumLevel; level++) {
+                int searchTreeLevel = level;
+                run("SearchTree.<init>(" + level + ")", phases[phase], positions.length, filter,
+                        index -> new SearchTree(positions[index], searchTreeLevel).hashCode());
+                run("DepthFirstSearch(" + level + ")", phases[phase], positions.length, filter, index -> {
+                    Board nextStep = new DepthFirstSearch(positions[index], searchTreeLevel)
+                            .nextStep(HeadlessConstants.BENCHMARK_STEPS);
+                    return (nextStep == null) ? 0 : nextStep.getScores();
+                });
+                if (("SearchTree.reset(" + level + ")").contains(filter)) {
+                    // The trees are built once, so the arenas are reused by every
+                    // rebuild.
+                    SearchTree[] reusedTrees = new SearchTree[positions.length];
+                    for (int i = 0; i < positions.length; i++)
+                        reusedTrees[i] = new SearchTree(positions[i], level);
+                    run("SearchTree.reset(" + level + ")", phases[phase], positions.length, filter, index -> {
+                        reusedTrees[index].reset(positions[index], searchTreeLevel);
+                        return reusedTrees[index].getNodeCount();
+                    });
+                }
+                if (!("SearchTree.nextDirection(" + level + ")").contains(filter))
+                    continue;
+                // The trees are built beforehand, so only the choice of the next
+                // step is measured.
+                SearchTree[] trees = new SearchTree[positions.length];
+                for (int i = 0; i < positions.length; i++)
+                    trees[i] = new SearchTree(positions[i], level);
+                run("SearchTree.nextDirection(" + level + ")", phases[phase], positions.length, filter, index -> {
+                    Directions nextDirection = trees[index].nextDirection(HeadlessConstants.BENCHMARK_STEPS);
+                    return (nextDirection == null) ? 0 : nextDirection.ordinal() + 1;
+                });
+            }
+        }
+    }
+
+
+    /**
+     * Runs a benchmark: the warm-up rounds and then the measured rounds, each
+     * of which applies the operation to all the positions in turn until the
+     * round time is over.
+     * @param name the name of the benchmark
+     * @param phase the phase of the game of the positions
+     * @param positionNumber the number of positions
+     * @param filter the part of the names of the benchmarks to run
+     * @param operation the operation being measured
+     */
+    private void run(String name, String phase, int positionNumber, String filter, Operation operation) {
+        if (!name.contains(filter))
+            return;
+        for (int round = 0; round < warmupRounds; round++)
+            runRound(positionNumber, operation);
+        double[] times = new double[measuredRounds];
+        double totalBytes = 0;
+        long totalOperations = 0;
+        for (int round = 0; round < measuredRounds; round++) {
+            long startBytes = getAllocatedBytes();
+            long startTime = System.nanoTime();
+            long operations = runRound(positionNumber, operation);
+            times[round] = (double) (System.nanoTime() - startTime) / operations;
+            totalBytes += getAllocatedBytes() - startBytes;
+            totalOperations += operations;
+        }
+
+        double mean = 0;
+        for (double time : times)
+            mean += time;
+        mean /= times.length;
+        double variance = 0;
+        for (double time : times)
+            variance += (time - mean) * (time - mean);
+        double error = (times.length > 1) ? Math.sqrt(variance / (times.length - 1)) : 0;
+        System.out.printf("%-28s %-6s %14.1f %12.1f %12s%n", name, phase, mean, error,
+                (allocationBean == null) ? "n/a" : String.format("%.1f", totalBytes / totalOperations));
+    }
+
+
+    /**
+     * Runs a round of a benchmark.
+     * @param positionNumber the number of positions
+     * @param operation the operation being measured
+     * @return the number of operations run in the round
+     */
+    private long runRound(int positionNumber, Operation operation) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(roundTime);
+        long operations = 0;
+        long result = 0;
+        do {
+            for (int index = 0; index < positionNumber; index++)
+                result += operation.run(index);
+            operations += positionNumber;
+        } while (System.nanoTime() - deadline < 0);
+        sink += result;
+        return operations;
+    }
+
+
+    /**
+     * Returns the number of bytes allocated by the current thread up to now.
+     * @return the number of allocated bytes, or 0 if it cannot be measured
+     */
+    private long getAllocatedBytes() {
+        return (allocationBean == null) ? 0
+                : allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+
+    /**
+     * Runs the benchmarks from the command line.
+     * @param args the options of the benchmarks (see
+     *             {@link HeadlessConstants#USAGE_BENCHMARK})
+     */
+    public static void main(String[] args) {
+        int maximumLevel = SettingsConstants.SEARCH_TREE_LEVEL_DEFAULT;
+        int warmupRounds = HeadlessConstants.BENCHMARK_WARMUP_ROUNDS;
+        int measuredRounds = HeadlessConstants.BENCHMARK_MEASURED_ROUNDS;
+        long roundTime = HeadlessConstants.BENCHMARK_ROUND_TIME;
+        String filter = "";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--max-level":
+                        maximumLevel = Integer.parseInt(args[++i]);
+                        break;
+                    case "--warmup":
+                        warmupRounds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rounds":
+                        measuredRounds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--time":
+                        roundTime = Long.parseLong(args[++i]);
+                        break;
+                    case "--filter":
+                        filter = args[++i];
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (maximumLevel < SettingsConstants.SEARCH_TREE_LEVEL_MIN
+                    || maximumLevel > SettingsConstants.SEARCH_TREE_LEVEL_MAX
+                    || warmupRounds < 0 || measuredRounds <= 0 || roundTime <= 0)
+                throw new IllegalArgumentException("Invalid option value");
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(HeadlessConstants.USAGE_BENCHMARK);
+            System.exit(1);
+        }
+        new EngineBenchmark(warmupRounds, measuredRounds, roundTime).runAll(maximumLevel, filter);
+    }
+}
@@ -0,0 +1,239 @@
+package yutongz1997.auto2048.headless;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import yutongz1997.auto2048.core.BitBoard;
+import yutongz1997.auto2048.core.NTupleEvaluator;
+import yutongz1997.auto2048.lib.CoreConstants;
+import yutongz1997.auto2048.lib.CoreConstants.Directions;
+import yutongz1997.auto2048.lib.HeadlessConstants;
+
+
+/**
+ * The class of the headless trainer of the n-tuple network evaluation function.
+ * The network learns by temporal difference (TD(0)) from self-play games on
+ * the afterstates, i.e. the boards just moved and not yet given a new number:
+ * every move is the one maximizing its scores plus the value of its afterstate,
+ * and the value of the previous afterstate is then moved towards the scores of
+ * this move plus the value of its afterstate.
+ * <p>All the worker threads share one network and update it without any lock
+ * (see {@link NTupleEvaluator#update(long, double)}), so the throughput grows
+ * with the number of cores. Each worker spawns the new numbers with its own
+ * random generator. The network is saved to the weights file periodically as a
+ * checkpoint, and once all the games are played.</p>
+ * @author Yutong Zhang
+ */
+public class TDTrainer {
+    // The number counted as reached when a game ends with it on the board.
+    private static final int GOAL_TILE = 2048;
+
+    // The network being trained.
+    private NTupleEvaluator network;
+    // The learning rate of every weight.
+    private double learningRate;
+    // The number of games started, which is also used to hand out the games to
+    // the worker threads.
+    private AtomicLong startedGameNumber = new AtomicLong();
+    // The counters of the finished games, of their moves and scores, and of
+    // those reaching 2048.
+    private LongAdder finishedGameNumber = new LongAdder();
+    private LongAdder moveNumber = new LongAdder();
+    private LongAdder totalScores = new LongAdder();
+    private LongAdder reached2048Number = new LongAdder();
+
+
+    /**
+     * Constructs a trainer object.
+     * @param network the network to train
+     * @param learningRate the learning rate of every weight
+     */
+    public TDTrainer(NTupleEvaluator network, double learningRate) {
+        this.network = network;
+        this.learningRate = learningRate;
+    }
+
+
+    /**
+     * Plays the given number of self-play games on the given number of threads
+     * while training the network, and reports the progress on the standard
+     * output.
+     * @param games the number of games to play
+     * @param threads the number of worker threads
+     * @param fileName the weights file to save the checkpoints to
+     * @throws IOException if a checkpoint cannot be saved
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *                              for the workers
+     */
+    public void train(long games, int threads, String fileName) throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++)
+            workers.execute(() -> playGames(games));
+        workers.shutdown();
+
+        long startTime = System.nanoTime();
+        long lastCheckpointTime = startTime;
+        long lastReportTime = startTime;
+        long lastGames = 0, lastMoves = 0, lastScores = 0, last2048 = 0;
+        try {
+            boolean finished = false;
+            while (!finished) {
+                finished = workers.awaitTermination(HeadlessConstants.REPORT_INTERVAL, TimeUnit.SECONDS);
+                long now = System.nanoTime();
+                long finishedGames = finishedGameNumber.sum();
+                long moves = moveNumber.sum();
+                long scores = totalScores.sum();
+                long reached2048 = reached2048Number.sum();
+                double seconds = (now - lastReportTime) / 1e9;
+                long intervalGames = finishedGames - lastGames;
+                System.out.printf("%d games, %.1f games/s, %.0f moves/s, mean score %.0f, 2048 rate %.1f%%%n",
+                        finishedGames, intervalGames / seconds, (moves - lastMoves) / seconds,
+                        (intervalGames == 0) ? 0.0 : (double) (scores - lastScores) / intervalGames,
+                        (intervalGames == 0) ? 0.0 : 100.0 * (reached2048 - last2048) / intervalGames);
+                lastReportTime = now;
+                lastGames = finishedGames;
+                lastMoves = moves;
+                lastScores = scores;
+                last2048 = reached2048;
+                if (now - lastCheckpointTime
+                        >= TimeUnit.SECONDS.toNanos(HeadlessConstants.TRAINER_CHECKPOINT_INTERVAL)) {
+                    network.save(fileName);
+                    lastCheckpointTime = now;
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        network.save(fileName);
+        System.out.printf("Finished %d games in %.1f s%n", finishedGameNumber.sum(),
+                (System.nanoTime() - startTime) / 1e9);
+    }
+
+
+    /**
+     * Plays games on the current thread until the given number of games have
+     * been started by all threads.
+     * @param games the number of games to play by all threads
+     */
+    private void playGames(long games) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (startedGameNumber.getAndIncrement() < games && !Thread.currentThread().isInterrupted())
+            playGame(random);
+    }
+
+
+    /**
+     * Plays a game from a new board and trains the network along the way.
+     * @param random the random generator spawning the new numbers
+     */
+    private void playGame(ThreadLocalRandom random) {
+        long board = addNumber(addNumber(0, random), random);
+        long previousAfterstate = 0;
+        boolean hasPrevious = false;
+        int scores = 0;
+        int moves = 0;
+        while (true) {
+            long bestAfterstate = board;
+            int bestScores = 0;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Directions direction : Directions.values()) {
+                long afterstate = BitBoard.move(board, direction);
+                if (afterstate == board)
+                    continue;
+                int moveScores = BitBoard.getMoveScore(board, direction);
+                double value = moveScores + network.evaluate(afterstate);
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestAfterstate = afterstate;
+                    bestScores = moveScores;
+                }
+            }
+            // The game is over, so the last afterstate is worth nothing.
+            if (bestAfterstate == board) {
+                if (hasPrevious)
+                    network.update(previousAfterstate, -learningRate * network.evaluate(previousAfterstate));
+                break;
+            }
+            if (hasPrevious)
+                network.update(previousAfterstate,
+                        learningRate * (bestValue - network.evaluate(previousAfterstate)));
+            previousAfterstate = bestAfterstate;
+            hasPrevious = true;
+            scores += bestScores;
+            moves++;
+            board = addNumber(bestAfterstate, random);
+        }
+
+        finishedGameNumber.increment();
+        moveNumber.add(moves);
+        totalScores.add(scores);
+        if (BitBoard.getMaxTile(board) >= GOAL_TILE)
+            reached2048Number.increment();
+    }
+
+
+    /**
+     * Adds a new number (2 or 4) to a random empty tile of a packed board.
+     * @param board the packed board
+     * @param random the random generator of the current thread
+     * @return the packed board with the new number
+     */
+    private static long addNumber(long board, ThreadLocalRandom random) {
+        int emptyTileNumber = BitBoard.getEmptyTileNumber(board);
+        if (emptyTileNumber == 0)
+            return board;
+        int exponent = (random.nextDouble() < CoreConstants.NUMBER_4_POSSIBILITY) ? 2 : 1;
+        return BitBoard.setEmptyTile(board, random.nextInt(emptyTileNumber), exponent);
+    }
+
+
+    /**
+     * Runs the trainer from the command line.
+     * @param args the weights file, and optionally the number of games, the
+     *             number of threads and the learning rate
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println(HeadlessConstants.USAGE_TRAINER);
+            System.exit(1);
+        }
+        String fileName = args[0];
+        long games = HeadlessConstants.TRAINER_DEFAULT_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double learningRate = HeadlessConstants.TRAINER_DEFAULT_LEARNING_RATE;
+        try {
+            if (args.length > 1)
+                games = Long.parseLong(args[1]);
+            if (args.length > 2)
+                threads = Integer.parseInt(args[2]);
+            if (args.length > 3)
+                learningRate = Double.parseDouble(args[3]);
+        } catch (NumberFormatException e) {
+            System.err.println(HeadlessConstants.USAGE_TRAINER);
+            System.exit(1);
+        }
+        if (games <= 0 || threads <= 0 || learningRate <= 0) {
+            System.err.println(HeadlessConstants.USAGE_TRAINER);
+            System.exit(1);
+        }
+
+        try {
+            NTupleEvaluator network = new File(fileName).exists() ? NTupleEvaluator.load(fileName)
+                    : new NTupleEvaluator(HeadlessConstants.N_TUPLE_DEFAULT_TUPLES);
+            System.out.printf("Training %d games on %d threads (learning rate %s)%n",
+                    games, threads, learningRate);
+            new TDTrainer(network, learningRate).train(games, threads, fileName);
+        } catch (IOException e) {
+            System.err.println("Unable to train the network: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,6 +3,9 @@ package yutongz1997.auto2048.lib;
 import java.util.Observable;
 import java.util.prefs.Preferences;
 
+import yutongz1997.auto2048.lib.CoreConstants.EvaluationModes;
+import yutongz1997.auto2048.lib.CoreConstants.SearchModes;
+
 
 /**
  * The class that stores all configurations / settings of the game / player.
@@ -19,8 +22,29 @@ public class Configurations extends Observable {
     private int bestScores;
     // The sleep time between each move of the auto player.
     private int sleepTime;
+    // Whether the auto player searches the next move during the sleep time.
+    private boolean pondering;
+    // Whether the iterative deepening search may take the rest of the sleep
+    // time while pondering, instead of only the time budget.
+    private boolean ponderingDeepening;
+    // The time budget (in milliseconds) of each move of the auto player.
+    private int moveBudget;
     // The level of the search tree (the larger it is, the better the performance is).
     private int searchTreeLevel;
+    // Whether the level of the search adapts to the board.
+    private boolean adaptiveLevel;
+    // The search mode of the auto player.
+    private SearchModes searchMode;
+    // The number of threads of the parallel search.
+    private int searchThreads;
+    // The maximum number of nodes of the search tree.
+    private int searchNodeLimit;
+    // The evaluation mode of the auto player.
+    private EvaluationModes evaluationMode;
+    // The weights file of the n-tuple evaluation mode.
+    private String weightsFile;
+    // The local port of the metrics server (0 for not serving the metrics).
+    private int metricsPort;
 
 
     /**
@@ -37,8 +61,58 @@ public class Configurations extends Observable {
                 SettingsConstants.DEFAULT_BEST_SCORES);
         sleepTime = preferences.getInt(SettingsConstants.KEY_SLEEP_TIME,
                 SettingsConstants.DEFAULT_SLEEP_TIME);
+        pondering = preferences.getBoolean(SettingsConstants.KEY_PONDERING,
+                SettingsConstants.DEFAULT_PONDERING);
+        ponderingDeepening = preferences.getBoolean(SettingsConstants.KEY_PONDERING_DEEPENING,
+                SettingsConstants.DEFAULT_PONDERING_DEEPENING);
+        moveBudget = preferences.getInt(SettingsConstants.KEY_MOVE_BUDGET,
+                SettingsConstants.DEFAULT_MOVE_BUDGET);
         searchTreeLevel = preferences.getInt(SettingsConstants.KEY_SEARCH_TREE_LEVEL,
                 SettingsConstants.SEARCH_TREE_LEVEL_DEFAULT);
+        adaptiveLevel = preferences.getBoolean(SettingsConstants.KEY_ADAPTIVE_LEVEL,
+                SettingsConstants.DEFAULT_ADAPTIVE_LEVEL);
+        searchMode = getSearchMode(preferences.get(SettingsConstants.KEY_SEARCH_MODE,
+                SettingsConstants.DEFAULT_SEARCH_MODE.name()));
+        searchThreads = preferences.getInt(SettingsConstants.KEY_SEARCH_THREADS,
+                SettingsConstants.SEARCH_THREADS_DEFAULT);
+        searchNodeLimit = preferences.getInt(SettingsConstants.KEY_SEARCH_NODE_LIMIT,
+                SettingsConstants.SEARCH_NODE_LIMIT_DEFAULT);
+        evaluationMode = getEvaluationMode(preferences.get(SettingsConstants.KEY_EVALUATION_MODE,
+                SettingsConstants.DEFAULT_EVALUATION_MODE.name()));
+        weightsFile = preferences.get(SettingsConstants.KEY_WEIGHTS_FILE,
+                SettingsConstants.DEFAULT_WEIGHTS_FILE);
+        metricsPort = preferences.getInt(SettingsConstants.KEY_METRICS_PORT,
+                SettingsConstants.METRICS_PORT_DEFAULT);
+    }
+
+
+    /**
+     * Converts the name of a search mode stored in the configuration file to
+     * the search mode itself.
+     * @param name the name of the search mode
+     * @return the search mode, or the default one if the name is unknown
+     */
+    private static SearchModes getSearchMode(String name) {
+        try {
+            return SearchModes.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return SettingsConstants.DEFAULT_SEARCH_MODE;
+        }
+    }
+
+
+    /**
+     * Converts the name of an evaluation mode stored in the configuration file
+     * to the evaluation mode itself.
+     * @param name the name of the evaluation mode
+     * @return the evaluation mode, or the default one if the name is unknown
+     */
+    private static EvaluationModes getEvaluationMode(String name) {
+        try {
+            return EvaluationModes.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return SettingsConstants.DEFAULT_EVALUATION_MODE;
+        }
     }
 
 
@@ -122,6 +196,81 @@ public class Configurations extends Observable {
     }
 
 
+    /**
+     * Determines whether the auto player searches the next move during the
+     * sleep time, as stored in the configuration file. By itself, pondering
+     * only hides the time of the search behind the sleep time, and does not
+     * search any deeper (see {@link #isPonderingDeepening()}).
+     * @return true if the auto player ponders; false otherwise
+     */
+    public boolean isPondering() {
+        return pondering;
+    }
+
+
+    /**
+     * Changes whether the auto player searches the next move during the sleep
+     * time, and save this change to the configuration file.
+     * @param pondering true if the auto player ponders; false otherwise
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        preferences.putBoolean(SettingsConstants.KEY_PONDERING, pondering);
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Determines whether the iterative deepening search may take the rest of
+     * the sleep time while pondering, if it is longer than the time budget of
+     * each move, as stored in the configuration file.
+     * @return true if the search may take the rest of the sleep time; false
+     *         if it always takes the time budget
+     */
+    public boolean isPonderingDeepening() {
+        return ponderingDeepening;
+    }
+
+
+    /**
+     * Changes whether the iterative deepening search may take the rest of the
+     * sleep time while pondering, and save this change to the configuration
+     * file.
+     * @param ponderingDeepening true if the search may take the rest of the
+     *                           sleep time; false otherwise
+     */
+    public void setPonderingDeepening(boolean ponderingDeepening) {
+        this.ponderingDeepening = ponderingDeepening;
+        preferences.putBoolean(SettingsConstants.KEY_PONDERING_DEEPENING, ponderingDeepening);
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Obtains the time budget of each move of the auto player stored in the
+     * configuration file.
+     * @return the time budget in milliseconds
+     */
+    public int getMoveBudget() {
+        return moveBudget;
+    }
+
+
+    /**
+     * Changes the time budget of each move of the auto player to a new one, and
+     * save this change to the configuration file.
+     * @param moveBudget the new time budget in milliseconds
+     */
+    public void setMoveBudget(int moveBudget) {
+        this.moveBudget = moveBudget;
+        preferences.putInt(SettingsConstants.KEY_MOVE_BUDGET, moveBudget);
+        setChanged();
+        notifyObservers();
+    }
+
+
     /**
      * Obtains the level of the search tree stored in the configuration file.
      * @return the search tree level
@@ -144,6 +293,168 @@ public class Configurations extends Observable {
     }
 
 
+    /**
+     * Determines whether the level of the search adapts to the board, as stored
+     * in the configuration file.
+     * @return true if the level adapts to the board; false if it is fixed
+     */
+    public boolean isAdaptiveLevel() {
+        return adaptiveLevel;
+    }
+
+
+    /**
+     * Changes whether the level of the search adapts to the board, and save
+     * this change to the configuration file.
+     * @param adaptiveLevel true if the level adapts to the board; false if it
+     *                      is fixed
+     */
+    public void setAdaptiveLevel(boolean adaptiveLevel) {
+        this.adaptiveLevel = adaptiveLevel;
+        preferences.putBoolean(SettingsConstants.KEY_ADAPTIVE_LEVEL, adaptiveLevel);
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Obtains the evaluation mode of the auto player stored in the configuration
+     * file.
+     * @return the evaluation mode
+     */
+    public EvaluationModes getEvaluationMode() {
+        return evaluationMode;
+    }
+
+
+    /**
+     * Changes the evaluation mode of the auto player to a given new one, and
+     * save this change to the configuration file.
+     * @param evaluationMode the new evaluation mode
+     */
+    public void setEvaluationMode(EvaluationModes evaluationMode) {
+        this.evaluationMode = evaluationMode;
+        preferences.put(SettingsConstants.KEY_EVALUATION_MODE, evaluationMode.name());
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Obtains the weights file of the n-tuple evaluation mode stored in the
+     * configuration file.
+     * @return the name of the weights file
+     */
+    public String getWeightsFile() {
+        return weightsFile;
+    }
+
+
+    /**
+     * Changes the weights file of the n-tuple evaluation mode, and save this
+     * change to the configuration file.
+     * @param weightsFile the name of the new weights file
+     */
+    public void setWeightsFile(String weightsFile) {
+        this.weightsFile = weightsFile;
+        preferences.put(SettingsConstants.KEY_WEIGHTS_FILE, weightsFile);
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Obtains the search mode of the auto player stored in the configuration file.
+     * @return the search mode
+     */
+    public SearchModes getSearchMode() {
+        return searchMode;
+    }
+
+
+    /**
+     * Changes the search mode of the auto player to a given new one, and save
+     * this change to the configuration file.
+     * @param searchMode the new search mode
+     */
+    public void setSearchMode(SearchModes searchMode) {
+        this.searchMode = searchMode;
+        preferences.put(SettingsConstants.KEY_SEARCH_MODE, searchMode.name());
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Obtains the number of threads of the parallel search stored in the
+     * configuration file.
+     * @return the number of threads
+     */
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+
+
+    /**
+     * Changes the number of threads of the parallel search to a given new one,
+     * and save this change to the configuration file.
+     * @param searchThreads the new number of threads
+     */
+    public void setSearchThreads(int searchThreads) {
+        this.searchThreads = searchThreads;
+        preferences.putInt(SettingsConstants.KEY_SEARCH_THREADS, searchThreads);
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Obtains the maximum number of nodes of the search tree stored in the
+     * configuration file.
+     * @return the maximum number of nodes
+     */
+    public int getSearchNodeLimit() {
+        return searchNodeLimit;
+    }
+
+
+    /**
+     * Changes the maximum number of nodes of the search tree to a given new
+     * one, and save this change to the configuration file.
+     * @param searchNodeLimit the new maximum number of nodes
+     */
+    public void setSearchNodeLimit(int searchNodeLimit) {
+        this.searchNodeLimit = searchNodeLimit;
+        preferences.putInt(SettingsConstants.KEY_SEARCH_NODE_LIMIT, searchNodeLimit);
+        setChanged();
+        notifyObservers();
+    }
+
+
+    /**
+     * Obtains the local port of the metrics server stored in the configuration
+     * file.
+     * @return the port of the metrics server, or 0 if the metrics are not served
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+
+    /**
+     * Changes the local port of the metrics server to a given new one, and save
+     * this change to the configuration file.
+     * @param metricsPort the new port of the metrics server, or 0 not to serve
+     *                    the metrics
+     */
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+        preferences.putInt(SettingsConstants.KEY_METRICS_PORT, metricsPort);
+        setChanged();
+        notifyObservers();
+    }
+
+
     /**
      * Resets all the properties to their default values.
      */
@@ -156,8 +467,28 @@ public class Configurations extends Observable {
         preferences.putInt(SettingsConstants.KEY_BEST_SCORES, bestScores);
         sleepTime = SettingsConstants.DEFAULT_SLEEP_TIME;
         preferences.putInt(SettingsConstants.KEY_SLEEP_TIME, sleepTime);
+        pondering = SettingsConstants.DEFAULT_PONDERING;
+        preferences.putBoolean(SettingsConstants.KEY_PONDERING, pondering);
+        ponderingDeepening = SettingsConstants.DEFAULT_PONDERING_DEEPENING;
+        preferences.putBoolean(SettingsConstants.KEY_PONDERING_DEEPENING, ponderingDeepening);
+        moveBudget = SettingsConstants.DEFAULT_MOVE_BUDGET;
+        preferences.putInt(SettingsConstants.KEY_MOVE_BUDGET, moveBudget);
         searchTreeLevel = SettingsConstants.SEARCH_TREE_LEVEL_DEFAULT;
         preferences.putInt(SettingsConstants.KEY_SEARCH_TREE_LEVEL, searchTreeLevel);
+        adaptiveLevel = SettingsConstants.DEFAULT_ADAPTIVE_LEVEL;
+        preferences.putBoolean(SettingsConstants.KEY_ADAPTIVE_LEVEL, adaptiveLevel);
+        searchMode = SettingsConstants.DEFAULT_SEARCH_MODE;
+        preferences.put(SettingsConstants.KEY_SEARCH_MODE, searchMode.name());
+        searchThreads = SettingsConstants.SEARCH_THREADS_DEFAULT;
+        preferences.putInt(SettingsConstants.KEY_SEARCH_THREADS, searchThreads);
+        searchNodeLimit = SettingsConstants.SEARCH_NODE_LIMIT_DEFAULT;
+        preferences.putInt(SettingsConstants.KEY_SEARCH_NODE_LIMIT, searchNodeLimit);
+        evaluationMode = SettingsConstants.DEFAULT_EVALUATION_MODE;
+        preferences.put(SettingsConstants.KEY_EVALUATION_MODE, evaluationMode.name());
+        weightsFile = SettingsConstants.DEFAULT_WEIGHTS_FILE;
+        preferences.put(SettingsConstants.KEY_WEIGHTS_FILE, weightsFile);
+        metricsPort = SettingsConstants.METRICS_PORT_DEFAULT;
+        preferences.putInt(SettingsConstants.KEY_METRICS_PORT, metricsPort);
         setChanged();
         notifyObservers();
     }
@@ -11,6 +11,9 @@ public final class CoreConstants {
 
     // The length of every row or column of the board.
     public static final int BOARD_DIMENSION = 4;
+    // The largest exponent a tile can reach, i.e. that of 32768, since every
+    // tile of a packed board takes 4 bits. Two tiles of 32768 never combine.
+    public static final int TILE_MAX_EXPONENT = 15;
     // The length of each tile in the string representation of the board.
     public static final int TILE_LENGTH = 5;
     // The possibility to generate a number 4 on the board.
@@ -29,6 +32,39 @@ public final class CoreConstants {
             return weight;
         }
     }
+    // The terms of the heuristic evaluation based on the tables of rows and
+    // columns, and their default weights.
+    public enum HeuristicTerms {
+        BASE(200000), CORNER(50), SIDE(1), OTHER(0), EMPTY(270),
+        MONOTONICITY(47), SMOOTHNESS(10), MERGE(700);
+
+        private double defaultWeight;
+
+        HeuristicTerms(double defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+
+        public double getDefaultWeight() {
+            return defaultWeight;
+        }
+    }
+    // The enumeration for all evaluation modes of the auto player.
+    public enum EvaluationModes {
+        BOARD("Scores and tile weights"),
+        ROW_TABLES("Tables of rows and columns"),
+        N_TUPLE("N-tuple network (weights file)");
+
+        private String description;
+
+        EvaluationModes(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
     // The number of possible directions.
     public static final int DIRECTION_NUMBER = 4;
     // The enumeration for all possible directions.
@@ -45,4 +81,55 @@ public final class CoreConstants {
             return directionIndex;
         }
     }
+    // The enumeration for all possible search modes of the auto player.
+    public enum SearchModes {
+        BREADTH_FIRST("Search tree (breadth first)"),
+        DEPTH_FIRST("Depth first"),
+        PARALLEL("Depth first (parallel)"),
+        ITERATIVE_DEEPENING("Iterative deepening (time budget)"),
+        EXPECTIMAX("Expectimax (chance nodes)");
+
+        private String description;
+
+        SearchModes(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+    // The parallel search stops splitting a subtree once it has no more than
+    // this number of levels left.
+    public static final int PARALLEL_SEARCH_CUTOFF_LEVEL = 4;
+    // The initial number of moves the undo stack of a board can hold before it
+    // has to grow (more than the deepest search ever makes in place).
+    public static final int UNDO_STACK_INITIAL_CAPACITY = 16;
+    // The number of nodes the arena of a search tree can hold before it has to
+    // grow: when the tree is built for a single decision, and when the auto
+    // player keeps it from one decision to the next.
+    public static final int SEARCH_TREE_INITIAL_CAPACITY = 1 << 10;
+    public static final int SEARCH_TREE_DEFAULT_CAPACITY = 1 << 16;
+    // The number of bytes of the arena of a search tree taken by every node
+    // (its packed afterstate and chance child, scores, parent, first child,
+    // depth, evaluation and new index).
+    public static final int SEARCH_TREE_NODE_BYTES = 8 + 8 + 4 + 4 + 4 + 1 + 8 + 4;
+    // The default number of entries of a transposition table.
+    public static final int TRANSPOSITION_TABLE_DEFAULT_CAPACITY = 1 << 20;
+    // The enumeration for all replacement policies of a transposition table.
+    public enum ReplacementPolicies {
+        // Keep the entry searched deeper when two boards share the same slot.
+        DEPTH_PREFERRED,
+        // Always replace the old entry with the new one.
+        ALWAYS_REPLACE
+    }
+    // The default threshold of the cumulative possibility below which the
+    // expectimax search stops expanding a branch.
+    public static final double PROBABILITY_CUTOFF_DEFAULT_THRESHOLD = 1e-4;
+    // The magic number at the beginning of an n-tuple weights file ("NTUP").
+    public static final int N_TUPLE_FILE_MAGIC = 0x4E545550;
+    // The maximum number of cells of an n-tuple (whose lookup table has 16^n
+    // entries).
+    public static final int N_TUPLE_MAX_LENGTH = 6;
 }
@@ -21,6 +21,15 @@ public final class GameFrameConstants {
     public static final int TILES_Y_MULTIPLIER = 120;
     public static final int TILE_WIDTH = 100;
     public static final int TILE_HEIGHT = 100;
+    // The minimum space between the number and the left or right side of a tile.
+    public static final int TILE_TEXT_MARGIN = 6;
+    // The interval (in milliseconds) between two frames of the board, which
+    // caps the frame rate at about 60 frames per second.
+    public static final int FRAME_INTERVAL = 16;
+    // The name of the thread running the auto play, and the time (in
+    // milliseconds) a new game waits for a stopped auto play to finish.
+    public static final String AUTO_PLAY_THREAD_NAME = "Auto Play";
+    public static final long AUTO_PLAY_STOP_TIMEOUT = 2000;
     // The game window's size.
     public static final Rectangle WINDOW_SIZE = new Rectangle(500, 50, 500, 650);
 
@@ -47,6 +56,14 @@ public final class GameFrameConstants {
     public static final String CAPTION_START_AFTER_GAME_OVER_DIALOG = "Unable to Start";
     public static final String MESSAGE_START_AFTER_GAME_OVER_DIALOG = "The game is already over. "
             + "You cannot start the auto player\nagain unless you create a new game.";
+    public static final String CAPTION_NEW_GAME_WHILE_STOPPING_DIALOG = "Unable to Start a New Game";
+    public static final String MESSAGE_NEW_GAME_WHILE_STOPPING_DIALOG = "The auto player is still stopping. "
+            + "Please try again in a moment.";
+    public static final String CAPTION_WEIGHTS_FILE_DIALOG = "Unable to Load Weights";
+    public static final String MESSAGE_WEIGHTS_FILE_DIALOG_PREFIX = "The n-tuple weights file cannot be loaded:\n";
+    public static final String MESSAGE_NO_WEIGHTS_FILE = "No n-tuple weights file is given in the settings.";
+    public static final String CAPTION_METRICS_DIALOG = "Unable to Serve Metrics";
+    public static final String MESSAGE_METRICS_DIALOG_PREFIX = "The metrics cannot be served on the port:\n";
     public static final String CAPTION_GAME_OVER_DIALOG = "Game Over";
     public static final String MESSAGE_GAME_OVER_DIALOG_PREFIX = "GAME OVER, ";
     public static final String LABEL_MAX_TILE_PREFIX = "Maximum Tile: ";
@@ -0,0 +1,89 @@
+package yutongz1997.auto2048.lib;
+
+
+/**
+ * The class containing all the constants used by the headless tools of the
+ * game, i.e. the ones run from the command line without the user interface.
+ * @author Yutong Zhang
+ */
+public final class HeadlessConstants {
+    // Make this class not instantiable by using a private constructor.
+    private HeadlessConstants() {}
+
+    // The tuples of the default n-tuple network: the outer and the inner row,
+    // and three of the 2x2 squares (all the others are their rotations and
+    // reflections). Cells are given by their indices (4 * row + column).
+    public static final int[][] N_TUPLE_DEFAULT_TUPLES = {
+            {0, 1, 2, 3}, {4, 5, 6, 7}, {0, 1, 4, 5}, {1, 2, 5, 6}, {5, 6, 9, 10}
+    };
+    // The default number of self-play games, learning rate, and interval (in
+    // seconds) between two checkpoints of the trainer.
+    public static final long TRAINER_DEFAULT_GAMES = 1000000;
+    public static final double TRAINER_DEFAULT_LEARNING_RATE = 0.0025;
+    public static final int TRAINER_CHECKPOINT_INTERVAL = 60;
+    // The interval (in seconds) between two progress reports.
+    public static final int REPORT_INTERVAL = 10;
+    // The usage of the trainer.
+    public static final String USAGE_TRAINER = "Usage: java yutongz1997.auto2048.headless.TDTrainer "
+            + "<weights file> [games] [threads] [learning rate]\n"
+            + "Trains the n-tuple network by self-play, resuming from the weights file if it exists.";
+    // The default number of games of the simulator, and the initial capacity
+    // of the time taken by the moves of a game.
+    public static final int SIMULATOR_DEFAULT_GAMES = 100;
+    public static final int SIMULATOR_INITIAL_MOVES = 1024;
+    // The tiles whose reach rates are reported.
+    public static final int[] REPORTED_TILES = {2048, 4096, 8192};
+    // The percentiles of the scores and of the time taken by each move which
+    // are reported.
+    public static final double[] SCORES_PERCENTILES = {10, 25, 50, 75, 90};
+    public static final double[] MOVE_TIME_PERCENTILES = {50, 90, 99, 99.9};
+    // The maximum number of seeds of the failed games which are reported.
+    public static final int REPORTED_FAILED_SEEDS = 10;
+    // The usage of the simulator.
+    public static final String USAGE_SIMULATOR = "Usage: java yutongz1997.auto2048.headless.BatchSimulator "
+            + "[options]\n"
+            + "Plays full games without the user interface and reports the statistics.\n"
+            + "  --games <n>           the number of games (default 100)\n"
+            + "  --threads <n>         the number of threads playing the games (default: all cores)\n"
+            + "  --mode <mode>         BREADTH_FIRST, DEPTH_FIRST, PARALLEL, ITERATIVE_DEEPENING or EXPECTIMAX\n"
+            + "  --level <n>           the search level (default 6)\n"
+            + "  --adaptive            adapt the level to the board (at most the level above)\n"
+            + "  --evaluation <mode>   BOARD, ROW_TABLES or N_TUPLE\n"
+            + "  --weights <file>      the weights file of the n-tuple evaluation\n"
+            + "  --search-threads <n>  the number of threads of every parallel search\n"
+            + "  --budget <ms>         the time budget of each move of the iterative deepening search\n"
+            + "  --seed <n>            the base seed of the games (the n-th game uses seed + n)\n"
+            + "  --node-limit <n>      the maximum nodes of the search tree (default 2097152)\n"
+            + "  --replacement <p>     DEPTH_PREFERRED or ALWAYS_REPLACE, the policy of the transposition table\n"
+            + "  --cutoff <p>          the probability cutoff threshold of expectimax (default 1e-4, 0 for none)\n"
+            + "  --metrics-port <n>    serve the search metrics on the local port while playing\n"
+            + "  --check-replay        replay the failed game of the highest seed alone and check its scores";
+    // The fixed corpus of packed positions of the benchmarks, taken from the
+    // early, middle and late phases of games (the scores do not affect the cost
+    // of the operations).
+    public static final long[] BENCHMARK_EARLY_POSITIONS = {
+            0x0001400020002010L, 0x1032000210030000L, 0x0234001000000001L
+    };
+    public static final long[] BENCHMARK_MIDDLE_POSITIONS = {
+            0xA643742153211031L, 0x22221554137B0000L, 0x320134574678579BL
+    };
+    public static final long[] BENCHMARK_LATE_POSITIONS = {
+            0xA961975186405420L, 0x11561478158A179BL, 0x12453367158A16ACL
+    };
+    // The steps of the game passed to the evaluation of the benchmarks.
+    public static final int BENCHMARK_STEPS = 100;
+    // The default number of warm-up and measured rounds of every benchmark, and
+    // the duration (in milliseconds) of every round.
+    public static final int BENCHMARK_WARMUP_ROUNDS = 3;
+    public static final int BENCHMARK_MEASURED_ROUNDS = 5;
+    public static final long BENCHMARK_ROUND_TIME = 200;
+    // The usage of the benchmarks.
+    public static final String USAGE_BENCHMARK = "Usage: java yutongz1997.auto2048.headless.EngineBenchmark "
+            + "[options]\n"
+            + "Measures the time and the allocation of the hot paths of the engine.\n"
+            + "  --max-level <n>  the maximum level of the search tree benchmarks (default 6)\n"
+            + "  --warmup <n>     the number of warm-up rounds of every benchmark (default 3)\n"
+            + "  --rounds <n>     the number of measured rounds of every benchmark (default 5)\n"
+            + "  --time <ms>      the duration of every round (default 200)\n"
+            + "  --filter <text>  only run the benchmarks whose names contain the text";
+}
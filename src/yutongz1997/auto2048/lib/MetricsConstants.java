@@ -0,0 +1,26 @@
+package yutongz1997.auto2048.lib;
+
+
+/**
+ * The class containing all the constants about the metrics of the searches and
+ * the ways they are published.
+ * @author Yutong Zhang
+ */
+public final class MetricsConstants {
+    // Make this class not instantiable by using a private constructor.
+    private MetricsConstants() {}
+
+    // The name under which the search metrics are registered over JMX.
+    public static final String OBJECT_NAME = "yutongz1997.auto2048:type=SearchMetrics";
+    // The upper bounds (in seconds) of the buckets of the histogram of the time
+    // taken by each decision.
+    public static final double[] DECISION_TIME_BUCKETS = {
+            0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5
+    };
+    // The path and the content type of the metrics served in the Prometheus
+    // text exposition format.
+    public static final String HTTP_PATH = "/metrics";
+    public static final String HTTP_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    // The prefix of the names of all the metrics.
+    public static final String METRIC_PREFIX = "auto2048_";
+}
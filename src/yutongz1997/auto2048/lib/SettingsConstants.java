@@ -1,5 +1,8 @@
 package yutongz1997.auto2048.lib;
 
+import yutongz1997.auto2048.lib.CoreConstants.EvaluationModes;
+import yutongz1997.auto2048.lib.CoreConstants.SearchModes;
+
 
 /**
  * The class containing all the constants used in the setting dialog.
@@ -17,14 +20,60 @@ public class SettingsConstants {
     public static final String KEY_BEST_SCORES = "BEST_SCORES";
     public static final String KEY_SLEEP_TIME = "SLEEP_TIME";
     public static final String KEY_SEARCH_TREE_LEVEL = "SEARCH_TREE_LEVEL";
+    public static final String KEY_SEARCH_MODE = "SEARCH_MODE";
+    public static final String KEY_SEARCH_THREADS = "SEARCH_THREADS";
+    public static final String KEY_MOVE_BUDGET = "MOVE_BUDGET";
+    public static final String KEY_ADAPTIVE_LEVEL = "ADAPTIVE_LEVEL";
+    public static final String KEY_EVALUATION_MODE = "EVALUATION_MODE";
+    public static final String KEY_WEIGHTS_FILE = "WEIGHTS_FILE";
+    public static final String KEY_METRICS_PORT = "METRICS_PORT";
+    public static final String KEY_PONDERING = "PONDERING";
+    public static final String KEY_PONDERING_DEEPENING = "PONDERING_DEEPENING";
+    public static final String KEY_SEARCH_NODE_LIMIT = "SEARCH_NODE_LIMIT";
     // The default values of all the properties.
     public static final String DEFAULT_PLAYER_NAME = "Anonymous";
     public static final int DEFAULT_BEST_SCORES = 0;
     public static final int DEFAULT_SLEEP_TIME = 500;
+    // The minimum, maximum and default time budget (in milliseconds) of each
+    // move of the iterative deepening search.
+    public static final int MOVE_BUDGET_MIN = 10;
+    public static final int MOVE_BUDGET_MAX = 10000;
+    public static final int MOVE_BUDGET_STEP = 10;
+    public static final int DEFAULT_MOVE_BUDGET = 200;
     // The minimum, maximum and default level of the search tree.
     public static final int SEARCH_TREE_LEVEL_MIN = 1;
     public static final int SEARCH_TREE_LEVEL_MAX = 12;
     public static final int SEARCH_TREE_LEVEL_DEFAULT = 6;
+    // The minimum, maximum and default number of nodes of the search tree of
+    // the breadth first search (each of which takes
+    // CoreConstants.SEARCH_TREE_NODE_BYTES bytes).
+    public static final int SEARCH_NODE_LIMIT_MIN = 1 << 10;
+    public static final int SEARCH_NODE_LIMIT_MAX = 1 << 26;
+    public static final int SEARCH_NODE_LIMIT_STEP = 1 << 16;
+    public static final int SEARCH_NODE_LIMIT_DEFAULT = 1 << 21;
+    // Whether the auto player searches during the sleep time by default.
+    public static final boolean DEFAULT_PONDERING = false;
+    // Whether the iterative deepening search may take the rest of the sleep
+    // time while pondering by default.
+    public static final boolean DEFAULT_PONDERING_DEEPENING = false;
+    // Whether the level of the search adapts to the board by default.
+    public static final boolean DEFAULT_ADAPTIVE_LEVEL = false;
+    // The default evaluation mode.
+    public static final EvaluationModes DEFAULT_EVALUATION_MODE = EvaluationModes.BOARD;
+    // The default n-tuple weights file (only used by the n-tuple evaluation mode).
+    public static final String DEFAULT_WEIGHTS_FILE = "";
+    // The default search mode.
+    public static final SearchModes DEFAULT_SEARCH_MODE = SearchModes.BREADTH_FIRST;
+    // The minimum, maximum and default number of threads of the parallel search.
+    public static final int SEARCH_THREADS_MIN = 1;
+    public static final int SEARCH_THREADS_MAX = 256;
+    public static final int SEARCH_THREADS_DEFAULT = Math.min(SEARCH_THREADS_MAX,
+            Runtime.getRuntime().availableProcessors());
+    // The minimum, maximum and default local port of the metrics server (0 for
+    // not serving the metrics).
+    public static final int METRICS_PORT_MIN = 0;
+    public static final int METRICS_PORT_MAX = 65535;
+    public static final int METRICS_PORT_DEFAULT = 0;
 
     // The constants of the slider.
     public static final int SLIDER_VALUE_MIN = 0;
@@ -42,7 +91,18 @@ public class SettingsConstants {
     public static final String TITLE_AUTO_PLAY = "Auto Play";
     public static final String LABEL_PLAYER_NAME = "The player's name:";
     public static final String LABEL_SLEEP_TIME = "The sleep time between each move:";
+    public static final String LABEL_PONDERING = "Search the next move during the sleep time (pondering)";
+    public static final String LABEL_PONDERING_DEEPENING =
+            "While pondering, search until the next move is due (iterative deepening only)";
+    public static final String LABEL_MOVE_BUDGET = "The time budget of each move (ms, iterative deepening only):";
     public static final String LABEL_SEARCH_LEVEL = "Search level:";
+    public static final String LABEL_SEARCH_MODE = "Search mode:";
+    public static final String LABEL_ADAPTIVE_LEVEL = "Adapt the level to the board (at most the level above)";
+    public static final String LABEL_SEARCH_THREADS = "Threads of the parallel search:";
+    public static final String LABEL_SEARCH_NODE_LIMIT = "Maximum nodes of the search tree (breadth first only):";
+    public static final String LABEL_EVALUATION_MODE = "Evaluation mode:";
+    public static final String LABEL_WEIGHTS_FILE = "N-tuple weights file:";
+    public static final String LABEL_METRICS_PORT = "Local port of the metrics server (0 for disabled):";
     public static final String BUTTON_RESET = "Reset";
     public static final String BUTTON_OK = "OK";
     public static final String BUTTON_CANCEL = "Cancel";
@@ -0,0 +1,87 @@
+package yutongz1997.auto2048.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import yutongz1997.auto2048.lib.MetricsConstants;
+
+
+/**
+ * The class of the local HTTP server publishing the search metrics in the
+ * Prometheus text exposition format. The server only listens on the loopback
+ * address, and serves the metrics at {@link MetricsConstants#HTTP_PATH} from a
+ * single daemon thread, so it never keeps the game from exiting.
+ * @author Yutong Zhang
+ */
+public class MetricsServer implements AutoCloseable {
+    // The underlying HTTP server.
+    private HttpServer server;
+    // The metrics being published.
+    private SearchMetrics metrics;
+
+
+    /**
+     * Constructs a metrics server and starts listening on the given port.
+     * @param metrics the metrics to publish
+     * @param port the port to listen on (0 for any free port)
+     * @throws IOException if the server cannot listen on the port
+     */
+    public MetricsServer(SearchMetrics metrics, int port) throws IOException {
+        this.metrics = metrics;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(MetricsConstants.HTTP_PATH, this::handle);
+        server.setExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-server");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        server.start();
+    }
+
+
+    /**
+     * Returns the port the server is listening on.
+     * @return the port of the server
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+
+    /**
+     * Answers a request with the current metrics.
+     * @param exchange the exchange of the request
+     * @throws IOException if the response cannot be written
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", MetricsConstants.HTTP_CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    /**
+     * Stops the server immediately.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,287 @@
+package yutongz1997.auto2048.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import yutongz1997.auto2048.lib.MetricsConstants;
+
+
+/**
+ * The class of the metrics of the searches of the auto player: the number of
+ * decisions and of expanded nodes, the depth reached, the histogram of the time
+ * taken by each decision, the lookups of the transposition tables, the nodes
+ * pruned by the probability cutoff, the decisions cut short by the node limit,
+ * and whether the auto player is running. The metrics may be recorded by several threads at
+ * once, and are published through JMX (see {@link #register()}) and in the
+ * Prometheus text exposition format (see {@link #toPrometheusText()}).
+ * @author Yutong Zhang
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+    // The counters of the decisions, of the expanded nodes, of the depths
+    // reached and of the time (in nanoseconds) taken by all decisions.
+    private final LongAdder decisionCount = new LongAdder();
+    private final LongAdder nodeCount = new LongAdder();
+    private final LongAdder depthSum = new LongAdder();
+    private final LongAdder decisionNanos = new LongAdder();
+    // The counters of the decisions in every bucket of the histogram of the time
+    // (the last one for the decisions slower than all the bounds).
+    private final LongAdder[] decisionTimeBuckets;
+    // The counters of the lookups of the transposition tables.
+    private final LongAdder transpositionHits = new LongAdder();
+    private final LongAdder transpositionMisses = new LongAdder();
+    // The counter of the nodes pruned by the probability cutoff.
+    private final LongAdder prunedNodes = new LongAdder();
+    // The counter of the decisions cut short by the node limit.
+    private final LongAdder nodeLimitHits = new LongAdder();
+    // The depth reached by and the time taken by the last decision.
+    private volatile int lastDepth;
+    private volatile long lastDecisionNanos;
+    // Whether the auto player is running.
+    private volatile boolean autoPlayRunning;
+
+
+    /**
+     * Constructs a search metrics object with all the metrics at zero.
+     */
+    public SearchMetrics() {
+        decisionTimeBuckets = new LongAdder[MetricsConstants.DECISION_TIME_BUCKETS.length + 1];
+        for (int i = 0; i < decisionTimeBuckets.length; i++)
+            decisionTimeBuckets[i] = new LongAdder();
+    }
+
+
+    /**
+     * Records a decision of the auto player.
+     * @param nanos the time taken by the decision in nanoseconds
+     * @param nodes the number of nodes expanded by the decision
+     * @param depth the depth reached by the decision
+     */
+    public void recordDecision(long nanos, long nodes, int depth) {
+        decisionCount.increment();
+        nodeCount.add(nodes);
+        depthSum.add(depth);
+        decisionNanos.add(nanos);
+        double seconds = nanos / 1e9;
+        int bucket = 0;
+        while (bucket < MetricsConstants.DECISION_TIME_BUCKETS.length
+                && seconds > MetricsConstants.DECISION_TIME_BUCKETS[bucket])
+            bucket++;
+        decisionTimeBuckets[bucket].increment();
+        lastDepth = depth;
+        lastDecisionNanos = nanos;
+    }
+
+
+    /**
+     * Records the lookups of a transposition table made by a decision.
+     * @param hits the number of lookups finding a value
+     * @param misses the number of lookups not finding a value
+     */
+    public void recordTranspositionLookups(long hits, long misses) {
+        transpositionHits.add(hits);
+        transpositionMisses.add(misses);
+    }
+
+
+    /**
+     * Records the nodes pruned by the probability cutoff of a decision.
+     * @param nodes the number of nodes evaluated early
+     */
+    public void recordPrunedNodes(long nodes) {
+        prunedNodes.add(nodes);
+    }
+
+
+    /**
+     * Records a decision whose search has been cut short by the node limit.
+     */
+    public void recordNodeLimitHit() {
+        nodeLimitHits.increment();
+    }
+
+
+    /**
+     * Changes whether the auto player is running.
+     * @param autoPlayRunning true if the auto player is running; false otherwise
+     */
+    public void setAutoPlayRunning(boolean autoPlayRunning) {
+        this.autoPlayRunning = autoPlayRunning;
+    }
+
+
+    @Override
+    public long getDecisionCount() {
+        return decisionCount.sum();
+    }
+
+
+    @Override
+    public long getNodeCount() {
+        return nodeCount.sum();
+    }
+
+
+    @Override
+    public double getNodesPerSecond() {
+        long nanos = decisionNanos.sum();
+        return (nanos == 0) ? 0 : nodeCount.sum() / (nanos / 1e9);
+    }
+
+
+    @Override
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+
+    @Override
+    public double getMeanDepth() {
+        long decisions = decisionCount.sum();
+        return (decisions == 0) ? 0 : (double) depthSum.sum() / decisions;
+    }
+
+
+    @Override
+    public double getLastDecisionMillis() {
+        return lastDecisionNanos / 1e6;
+    }
+
+
+    @Override
+    public double getMeanDecisionMillis() {
+        long decisions = decisionCount.sum();
+        return (decisions == 0) ? 0 : decisionNanos.sum() / 1e6 / decisions;
+    }
+
+
+    @Override
+    public double getTranspositionHitRate() {
+        long hits = transpositionHits.sum();
+        long lookups = hits + transpositionMisses.sum();
+        return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+
+
+    @Override
+    public long getPrunedNodeCount() {
+        return prunedNodes.sum();
+    }
+
+
+    @Override
+    public long getNodeLimitHitCount() {
+        return nodeLimitHits.sum();
+    }
+
+
+    @Override
+    public boolean isAutoPlayRunning() {
+        return autoPlayRunning;
+    }
+
+
+    @Override
+    public void reset() {
+        decisionCount.reset();
+        nodeCount.reset();
+        depthSum.reset();
+        decisionNanos.reset();
+        for (LongAdder bucket : decisionTimeBuckets)
+            bucket.reset();
+        transpositionHits.reset();
+        transpositionMisses.reset();
+        prunedNodes.reset();
+        nodeLimitHits.reset();
+        lastDepth = 0;
+        lastDecisionNanos = 0;
+    }
+
+
+    /**
+     * Registers the metrics to the platform MBean server, so that they can be
+     * read by any JMX client (e.g. JConsole).
+     * @throws JMException if the metrics cannot be registered
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MetricsConstants.OBJECT_NAME);
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+        server.registerMBean(this, name);
+    }
+
+
+    /**
+     * Converts the metrics to the Prometheus text exposition format.
+     * @return the metrics in the text exposition format
+     */
+    public String toPrometheusText() {
+        StringBuilder builder = new StringBuilder();
+        appendMetric(builder, "search_decisions_total", "counter",
+                "Number of decisions made by the auto player.", getDecisionCount());
+        appendMetric(builder, "search_nodes_total", "counter",
+                "Number of nodes expanded by all searches.", getNodeCount());
+        appendMetric(builder, "search_nodes_per_second", "gauge",
+                "Nodes expanded per second of searching.", getNodesPerSecond());
+        appendMetric(builder, "search_depth_last", "gauge",
+                "Depth reached by the last decision.", lastDepth);
+        appendMetric(builder, "search_depth_sum", "counter",
+                "Sum of the depths reached by all decisions.", depthSum.sum());
+
+        String histogram = MetricsConstants.METRIC_PREFIX + "search_decision_seconds";
+        builder.append("# HELP ").append(histogram).append(" Time taken by each decision.\n");
+        builder.append("# TYPE ").append(histogram).append(" histogram\n");
+        long cumulativeCount = 0;
+        for (int i = 0; i < decisionTimeBuckets.length; i++) {
+            cumulativeCount += decisionTimeBuckets[i].sum();
+            String bound = (i < MetricsConstants.DECISION_TIME_BUCKETS.length)
+                    ? BigDecimal.valueOf(MetricsConstants.DECISION_TIME_BUCKETS[i]).stripTrailingZeros()
+                            .toPlainString() : "+Inf";
+            builder.append(histogram).append("_bucket{le=\"").append(bound).append("\"} ")
+                    .append(cumulativeCount).append('\n');
+        }
+        builder.append(histogram).append("_sum ")
+                .append(decisionNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+        builder.append(histogram).append("_count ").append(cumulativeCount).append('\n');
+
+        // The transposition table metrics only exist if a table has been used.
+        long hits = transpositionHits.sum();
+        long misses = transpositionMisses.sum();
+        if (hits + misses > 0) {
+            appendMetric(builder, "transposition_hits_total", "counter",
+                    "Lookups of the transposition tables finding a value.", hits);
+            appendMetric(builder, "transposition_misses_total", "counter",
+                    "Lookups of the transposition tables not finding a value.", misses);
+            appendMetric(builder, "transposition_hit_rate", "gauge",
+                    "Ratio of hits to all lookups of the transposition tables.", getTranspositionHitRate());
+        }
+        appendMetric(builder, "search_pruned_nodes_total", "counter",
+                "Number of nodes evaluated early by the probability cutoff.", getPrunedNodeCount());
+        appendMetric(builder, "search_node_limit_hits_total", "counter",
+                "Number of decisions cut short by the node limit.", getNodeLimitHitCount());
+        appendMetric(builder, "autoplay_running", "gauge",
+                "Whether the auto player is running (1) or not (0).", autoPlayRunning ? 1 : 0);
+        return builder.toString();
+    }
+
+
+    /**
+     * Appends a metric with a single value in the text exposition format.
+     * @param builder the builder of the text
+     * @param name the name of the metric (without the prefix)
+     * @param type the type of the metric
+     * @param help the description of the metric
+     * @param value the value of the metric
+     */
+    private static void appendMetric(StringBuilder builder, String name, String type, String help, Number value) {
+        String fullName = MetricsConstants.METRIC_PREFIX + name;
+        builder.append("# HELP ").append(fullName).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(fullName).append(' ').append(type).append('\n');
+        builder.append(fullName).append(' ').append(value).append('\n');
+    }
+}
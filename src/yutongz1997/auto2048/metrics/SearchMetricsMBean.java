@@ -0,0 +1,93 @@
+package yutongz1997.auto2048.metrics;
+
+
+/**
+ * The management interface of the search metrics, through which they are
+ * published over JMX (see {@link SearchMetrics}).
+ * @author Yutong Zhang
+ */
+public interface SearchMetricsMBean {
+    /**
+     * Returns the number of decisions (searched moves) made so far.
+     * @return the number of decisions
+     */
+    long getDecisionCount();
+
+
+    /**
+     * Returns the number of nodes expanded by all the searches so far.
+     * @return the number of nodes
+     */
+    long getNodeCount();
+
+
+    /**
+     * Returns the number of nodes expanded per second of searching.
+     * @return the number of nodes per second, or 0 if nothing has been searched
+     */
+    double getNodesPerSecond();
+
+
+    /**
+     * Returns the depth reached by the last decision.
+     * @return the depth of the last decision
+     */
+    int getLastDepth();
+
+
+    /**
+     * Returns the mean depth reached by all the decisions.
+     * @return the mean depth, or 0 if there is no decision yet
+     */
+    double getMeanDepth();
+
+
+    /**
+     * Returns the time taken by the last decision.
+     * @return the time of the last decision in milliseconds
+     */
+    double getLastDecisionMillis();
+
+
+    /**
+     * Returns the mean time taken by all the decisions.
+     * @return the mean time in milliseconds, or 0 if there is no decision yet
+     */
+    double getMeanDecisionMillis();
+
+
+    /**
+     * Returns the ratio of hits to all lookups of the transposition tables.
+     * @return the hit rate, or 0 if no transposition table has been used
+     */
+    double getTranspositionHitRate();
+
+
+    /**
+     * Returns the number of nodes evaluated early by the probability cutoff of
+     * all the expectimax searches so far.
+     * @return the number of pruned nodes
+     */
+    long getPrunedNodeCount();
+
+
+    /**
+     * Returns the number of decisions whose searches have been cut short by the
+     * node limit, i.e. which fell back to a shallower level.
+     * @return the number of decisions reaching the node limit
+     */
+    long getNodeLimitHitCount();
+
+
+    /**
+     * Determines whether the auto player is running.
+     * @return true if the auto player is running; false otherwise
+     */
+    boolean isAutoPlayRunning();
+
+
+    /**
+     * Forgets all the metrics recorded so far.
+     */
+    void reset();
+}